@@ -16,7 +16,8 @@ import rbm.Params;
 public class Encoding {
     
     public static final int NUM_CHORD_COLUMNS = 12;
-    public static final int NUM_NOTE_COLUMNS = Params.noteEncoding.getLeadSheetMelodyColumns();
+    // for the default encoding; see NoteEncodings.getLeadSheetMelodyColumns
+    public static final int NUM_NOTE_COLUMNS = Params.DEFAULT_NOTE_ENCODING.getLeadSheetMelodyColumns();
     
     public final static int[] NO_CHORD          = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
     public final static int[] C_MAJOR           = {1, 0, 0, 0, 1, 0, 0, 1, 0, 0, 0, 0};
@@ -39,10 +39,19 @@ import rbm.Params;
 public class LeadSheetHandler implements Constants {
 
 
+    /*
+     * The methods without a NoteEncodings parameter use the default encoding
+     * (Params.DEFAULT_NOTE_ENCODING); models with another encoding pass
+     * the one in their RbmConfig.
+     */
     public static DataVessel[] parseAllLeadSheetLicks(File[] files) {
+        return parseAllLeadSheetLicks(files, Params.DEFAULT_NOTE_ENCODING);
+    }
+
+    public static DataVessel[] parseAllLeadSheetLicks(File[] files, NoteEncodings encoding) {
         DataVessel[] outputs = new DataVessel[files.length];
         for (int i = 0; i < files.length; i++) {
-            outputs[i] = parseLeadSheetLick(files[i]);
+            outputs[i] = parseLeadSheetLick(files[i], encoding);
         }
         return outputs;
     }
@@ -52,12 +61,21 @@ public class LeadSheetHandler implements Constants {
         return parseLeadSheetLick(filename.getAbsolutePath());
     }
 
+    public static DataVessel parseLeadSheetLick(File filename, NoteEncodings encoding) {
+        return parseLeadSheetLick(filename.getAbsolutePath(), encoding);
+    }
+
     public static DataVessel parseLeadSheetLick(String filename) {
-        int[] currMelody = parseLeadSheetMelody(filename);
+        return parseLeadSheetLick(filename, Params.DEFAULT_NOTE_ENCODING);
+    }
+
+    public static DataVessel parseLeadSheetLick(String filename, NoteEncodings encoding) {
+        int[] currMelody = parseLeadSheetMelody(filename, encoding);
         int[] currChords = parseLeadSheetChords(filename);
 
+        int numNoteColumns = encoding.getLeadSheetMelodyColumns();
         int numChordRows = currChords.length / Encoding.NUM_CHORD_COLUMNS;
-        int melRows = currMelody.length / Encoding.NUM_NOTE_COLUMNS;
+        int melRows = currMelody.length / numNoteColumns;
 
         if (numChordRows != melRows) {
                 int[] temp = new int[melRows * Encoding.NUM_CHORD_COLUMNS];
@@ -69,12 +87,16 @@ public class LeadSheetHandler implements Constants {
                 currChords = temp;
             }
 
-        return new DataVessel(currMelody, currChords, melRows, Encoding.NUM_NOTE_COLUMNS);
+        return new DataVessel(currMelody, currChords, melRows, numNoteColumns);
     }
 
 
-    //TODO: make this support more than 8th note resolution files
     public static int[] parseLeadSheetMelody(String filename) {
+        return parseLeadSheetMelody(filename, Params.DEFAULT_NOTE_ENCODING);
+    }
+
+    //TODO: make this support more than 8th note resolution files
+    public static int[] parseLeadSheetMelody(String filename, NoteEncodings encoding) {
 
         ArrayList<int[]> melody = new ArrayList<int[]>();
 
@@ -106,7 +128,7 @@ public class LeadSheetHandler implements Constants {
                     int midiValue = noteSymbol.getMIDI();
 
                     //melody.add(constructNote(duration, midiValue));
-                    melody.add(constructNote(duration, midiValue));
+                    melody.add(constructNote(duration, midiValue, encoding));
                     
                 }
                 
@@ -129,6 +151,10 @@ public class LeadSheetHandler implements Constants {
         return parseLeadSheetMelody(file.getAbsolutePath());
     }
 
+    public static int[] parseLeadSheetMelody(File file, NoteEncodings encoding) {
+        return parseLeadSheetMelody(file.getAbsolutePath(), encoding);
+    }
+
 
     //TODO: make this support more than 8th note resolution files
     public static int[] parseLeadSheetChords(String filename) {
@@ -251,14 +277,26 @@ public class LeadSheetHandler implements Constants {
     } // end of method constructNote
 */
     /**
-     * Constructs a note according to value of the encoding parameter in Params class
+     * Constructs a note in the default encoding (Params.DEFAULT_NOTE_ENCODING)
      * @param duration Duration of the note in time steps
      * @param midiValue The midi-value of the note
      * @return The given note in array form
      */
     public static int[] constructNote(int duration, int midiValue)
     {
-        switch(Params.noteEncoding){
+        return constructNote(duration, midiValue, Params.DEFAULT_NOTE_ENCODING);
+    }
+
+    /**
+     * Constructs a note according to the given encoding
+     * @param duration Duration of the note in time steps
+     * @param midiValue The midi-value of the note
+     * @param encoding The note encoding of the model the note is for
+     * @return The given note in array form
+     */
+    public static int[] constructNote(int duration, int midiValue, NoteEncodings encoding)
+    {
+        switch(encoding){
             case Sequential: return constructNote(duration, midiValue, NoteEncodings.sequentialNotes);
             case CirclesOfThirds: return constructNote(duration, midiValue, NoteEncodings.circlesNotes, NoteEncodings.octaves);
             case ChromaticOneHot: //Octave form will be default
@@ -402,6 +440,10 @@ public class LeadSheetHandler implements Constants {
     }
 
    public static void writeLeadSheet(DataVessel data, int rowsPerBeat, String filename) {
+       writeLeadSheet(data, rowsPerBeat, filename, Params.DEFAULT_NOTE_ENCODING);
+   }
+
+   public static void writeLeadSheet(DataVessel data, int rowsPerBeat, String filename, NoteEncodings encoding) {
        try
        {
             BufferedWriter outWriter = new BufferedWriter(new FileWriter(new File(filename)));
@@ -424,7 +466,7 @@ public class LeadSheetHandler implements Constants {
                 beat[0] = 0;
                 beat[1] = 1; //Set error to rest
             }
-            String note = decodeNote(beat);
+            String note = decodeNote(beat, encoding);
 
             for (int i=1; i<numRows; ++i)
             {
@@ -434,7 +476,7 @@ public class LeadSheetHandler implements Constants {
                 else
                 {
                     outWriter.write(note+getDuration(duration,rowsPerBeat)+" ");
-                    note = decodeNote(beat);
+                    note = decodeNote(beat, encoding);
                     duration = 1;
                 }
             }
@@ -453,29 +495,7 @@ public class LeadSheetHandler implements Constants {
             for(int row = 0;row < numRows; row++){
                 System.arraycopy(chords, row*Encoding.NUM_CHORD_COLUMNS, temp, 0, Encoding.NUM_CHORD_COLUMNS);
 
-                String type = Encoding.CHORD_TYPES.get(temp);
-                int offset = 0;
-
-                // transpose until we hit the C chord, giving us the type and the distance to the symbol we need
-                while(type == null)
-                {
-                    offset += 1;
-                    if (offset >= 12) {
-                        System.err.println("Invalid chord, using NC");
-                        type = "NC";
-                        break;
-                    }
-                    type = Encoding.CHORD_TYPES.get( transposeChord(temp, offset));
-                }
-
-
-                String symb;
-                if (type.equals("NC")) {
-                    symb = "NC";
-                } else {
-                    symb = Encoding.DISTANCES_TO_C.get( Math.abs(offset - 12) % 12  );
-                    symb = symb + type;
-                }
+                String symb = chordSymbol(temp);
 
                 // if we have seen this one previously, increment its count
                 if(symb.equals(previousSymbol)){
@@ -493,31 +513,9 @@ public class LeadSheetHandler implements Constants {
 
                 if(row != 0 && ( (row + 1) % (rowsPerBeat * 4) ) == 0 ){
 
-                    // find the minimum count
-                    int min = chordCountHolder.get(0);
-                    for(int testmin: chordCountHolder){
-                        if(testmin < min){
-                            min = testmin;
-                        }
-                    }
-
-                    // divide all the counts by the minimum count, giving us the
-                    // number of times we need to play each chord
-                    for(int i = 0; i < chordCountHolder.size(); i++){
-                        chordCountHolder.set(i, chordCountHolder.get(i) / min);
-                    }
-
-                    // play each chord for the right number of times
-                    for(int i = 0; i < chordHolder.size(); i++){
-                        for(int j = 0; j < chordCountHolder.get(i); j++){
-                            outWriter.write( chordHolder.get(i) + " "  );
-                        }
-                    }
-
+                    writeChordBar(chordHolder, chordCountHolder, outWriter);
 
-                    // close the measure and reset all variables
-                    outWriter.write(" | ");
-                    outWriter.newLine();
+                    // reset all variables
                     previousSymbol = "";
                     chordHolder = new ArrayList<String>();
                     chordCountHolder = new ArrayList<Integer>();
@@ -532,6 +530,65 @@ public class LeadSheetHandler implements Constants {
 
     } // end of method writeLeadSheet
 
+    /**
+     *
+     * @param chord - one row of chord data
+     * @return - the symbol of the chord (NC if it is no known chord)
+     */
+    static String chordSymbol(int[] chord) {
+        String type = Encoding.CHORD_TYPES.get(chord);
+        int offset = 0;
+
+        // transpose until we hit the C chord, giving us the type and the distance to the symbol we need
+        while(type == null)
+        {
+            offset += 1;
+            if (offset >= 12) {
+                System.err.println("Invalid chord, using NC");
+                type = "NC";
+                break;
+            }
+            type = Encoding.CHORD_TYPES.get( transposeChord(chord, offset));
+        }
+
+        if (type.equals("NC")) {
+            return "NC";
+        }
+        return Encoding.DISTANCES_TO_C.get( Math.abs(offset - 12) % 12  ) + type;
+    }
+
+    /**
+     *
+     * @param chordHolder - the chords of a measure, in order
+     * @param chordCountHolder - the number of rows each of them lasts
+     * @param outWriter - where to write the measure
+     *
+     * Writes one measure of chords, each as many times as its share of the
+     * measure asks for, and closes the measure
+     */
+    static void writeChordBar(ArrayList<String> chordHolder, ArrayList<Integer> chordCountHolder,
+            BufferedWriter outWriter) throws IOException {
+        // find the minimum count
+        int min = chordCountHolder.get(0);
+        for(int testmin: chordCountHolder){
+            if(testmin < min){
+                min = testmin;
+            }
+        }
+
+        // play each chord for the right number of times (its count divided
+        // by the minimum count)
+        for(int i = 0; i < chordHolder.size(); i++){
+            for(int j = 0; j < chordCountHolder.get(i) / min; j++){
+                outWriter.write( chordHolder.get(i) + " "  );
+            }
+        }
+
+        // close the measure
+        outWriter.write(" | ");
+        outWriter.newLine();
+    }
+
 //DEPRECATED, USE DECODE NOTE
     private static String getNote(int[] beat) {
         //account for rests
@@ -619,8 +676,8 @@ public class LeadSheetHandler implements Constants {
         return "r";
     }
     
-    private static String decodeNote(int[] beat) {
-        switch(Params.noteEncoding) {
+    static String decodeNote(int[] beat, NoteEncodings encoding) {
+        switch(encoding) {
             case Sequential: return getSequentialNote(beat);
             case CirclesOfThirds: return getCircleNote(beat);
             case ChromaticOneHot: 
@@ -628,7 +685,7 @@ public class LeadSheetHandler implements Constants {
         }
     } 
 
-    private static String getDuration(int duration, int divisionsPerBeat)
+    static String getDuration(int duration, int divisionsPerBeat)
     {
         //For simple durations shorter than one beat
         if (divisionsPerBeat % duration == 0)
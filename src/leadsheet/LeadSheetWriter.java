@@ -0,0 +1,158 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package leadsheet;
+
+import encoding.Encoding;
+import encoding.NoteEncodings;
+import java.io.*;
+import java.util.ArrayList;
+import rbm.DataVessel;
+import rbm.MelodyWriter;
+
+/**
+ * class LeadSheetWriter
+ *
+ * Writes a leadsheet as the rows of a generation arrive, in the notation of
+ * LeadSheetHandler.writeLeadSheet, except that each measure of chords
+ * follows the notes that ended in it instead of coming after the whole
+ * melody (chord symbols and notes are read as separate parts, so the file
+ * parses the same).  A note is written once the next one starts, and a
+ * measure of chords once its last row has come; both are flushed to disk
+ * straight away.
+ */
+public class LeadSheetWriter implements MelodyWriter {
+
+    private final BufferedWriter outWriter;
+    private final int rowsPerBeat;
+    private final NoteEncodings encoding;
+    private IOException error = null;
+
+    // the rows written so far, the note being held and its duration in rows
+    private int row = 0;
+    private String note = null;
+    private int duration = 0;
+
+    // the chords of the measure being written (see LeadSheetHandler.writeChordBar)
+    private ArrayList<String> chordHolder = new ArrayList<String>();
+    private ArrayList<Integer> chordCountHolder = new ArrayList<Integer>();
+    private String previousSymbol = "";
+
+    /**
+     *
+     * @param filename - the file to write to
+     * @param rowsPerBeat - the number of rows per beat (i.e. resolution)
+     * @param encoding - the note encoding of the melody
+     */
+    public LeadSheetWriter(String filename, int rowsPerBeat, NoteEncodings encoding) throws IOException {
+        this.rowsPerBeat = rowsPerBeat;
+        this.encoding = encoding;
+        outWriter = new BufferedWriter(new FileWriter(new File(filename)));
+
+        //set style
+        outWriter.write("(section (style no-style-but-swing))");
+        outWriter.newLine();
+    }
+
+    public void rowsGenerated(DataVessel rows, int firstRow) {
+        if (error != null) {
+            return;
+        }
+        try {
+            if (firstRow != row) {
+                throw new IOException("Row " + firstRow + " out of order, expected row " + row);
+            }
+            writeRows(rows);
+            outWriter.flush();
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private void writeRows(DataVessel rows) throws IOException {
+        int numCols = rows.getNumCols();
+        int[] melody = rows.getMelody();
+        int[] chords = rows.getChords();
+        int[] beat = new int[numCols];
+        int[] temp = new int[Encoding.NUM_CHORD_COLUMNS];
+
+        for (int i = 0; i < rows.getNumRows(); i++, row++) {
+            System.arraycopy(melody, i*numCols, beat, 0, numCols);
+            if (note == null && beat[0] == 1) {
+                System.err.println("ERROR: first beat of bit-vector sustained");
+                beat[0] = 0;
+                beat[1] = 1; //Set error to rest
+            }
+            if (beat[0] == 1) {
+                duration++;
+            } else {
+                if (note != null) {
+                    outWriter.write(note+LeadSheetHandler.getDuration(duration,rowsPerBeat)+" ");
+                }
+                note = LeadSheetHandler.decodeNote(beat, encoding);
+                duration = 1;
+            }
+
+            if (chords == null) {
+                continue;
+            }
+            System.arraycopy(chords, i*Encoding.NUM_CHORD_COLUMNS, temp, 0, Encoding.NUM_CHORD_COLUMNS);
+            String symb = LeadSheetHandler.chordSymbol(temp);
+
+            // if we have seen this one previously, increment its count
+            if (symb.equals(previousSymbol)) {
+                int lastIndex = chordCountHolder.size() - 1;
+                chordCountHolder.set(lastIndex, chordCountHolder.get(lastIndex) + 1);
+            } else {
+                previousSymbol = symb;
+                chordHolder.add(symb);
+                chordCountHolder.add(1);
+            }
+
+            if (row != 0 && ((row + 1) % (rowsPerBeat * 4)) == 0) {
+                outWriter.newLine();
+                LeadSheetHandler.writeChordBar(chordHolder, chordCountHolder, outWriter);
+                previousSymbol = "";
+                chordHolder = new ArrayList<String>();
+                chordCountHolder = new ArrayList<Integer>();
+            }
+        }
+    }
+
+    /**
+     * Writes the last note and closes the file; throws the first error met
+     * while writing.  Chords of an unfinished measure are left out, as
+     * writeLeadSheet leaves them out.
+     */
+    public void close() throws IOException {
+        try {
+            if (error == null && note != null) {
+                outWriter.write(note+LeadSheetHandler.getDuration(duration,rowsPerBeat)+" ");
+                outWriter.newLine();
+            }
+        } finally {
+            outWriter.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+} // end of class LeadSheetWriter
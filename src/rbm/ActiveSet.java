@@ -0,0 +1,81 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+/**
+ * class ActiveSet
+ *
+ * A compact list of the rows of a weight matrix that have been written since
+ * they were last cleared.  RBM and ParallelTrainer use it to track the dirty
+ * rows of their gradient accumulators, so that an update (or a merge of
+ * per-thread gradients) only visits those rows and can zero them again
+ * without sweeping the whole matrix.  Adding a row is constant time and adding
+ * it twice has no effect.
+ */
+public class ActiveSet {
+
+    private final int[] members;    // the indices added, in no particular order
+    private final int[] positions;  // position of each index in members, -1 if absent
+    private int size;
+
+    /**
+     *
+     * @param capacity - the number of rows that can be tracked
+     */
+    public ActiveSet(int capacity) {
+        members = new int[capacity];
+        positions = new int[capacity];
+        java.util.Arrays.fill(positions, -1);
+    }
+
+    /**
+     *
+     * @return - the number of indices added since the last clear
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @param k - a position in the list, between 0 and size() - 1
+     * @return - the index stored at that position
+     */
+    public int get(int k) {
+        return members[k];
+    }
+
+    public void add(int index) {
+        if (positions[index] == -1) {
+            positions[index] = size;
+            members[size++] = index;
+        }
+    }
+
+    public void clear() {
+        for (int k = 0; k < size; k++) {
+            positions[members[k]] = -1;
+        }
+        size = 0;
+    }
+} // end of class ActiveSet
@@ -0,0 +1,580 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import encoding.NoteEncodings;
+
+/**
+ * class BatchRunner
+ *
+ * Trains and generates from the command line, without a MainFrame, so long
+ * trainings can run on machines without a display and generations can be
+ * scripted.  Usage:
+ *
+ *   java -cp RBM-provisor.jar rbm.BatchRunner COMMAND [config=FILE] [KEY=VALUE ...]
+ *
+ * Settings are read from the properties file given by config (if any) and
+ * then from the KEY=VALUE arguments, which take precedence.  Commands:
+ *
+ *   train     - trains a new brain on data and saves it to out
+ *   add-layer - adds a layer of layerSize nodes to brain, trains it and saves
+ *               the brain to out (or back to brain)
+ *   generate  - generates outputs melodies over the chords of the chords file
+ *               with brain, into outDir
+ *   sweep     - trains (and, given chords, generates from) one brain for every
+ *               combination of the values of the settings that list several
+ *               values separated by ';', e.g. learningRate=0.1;0.2
+ *
+ * Run without a command for the list of settings and their defaults.
+ */
+public class BatchRunner {
+
+    private static final String USAGE =
+        "usage: rbm.BatchRunner train|add-layer|generate|sweep [config=FILE] [KEY=VALUE ...]\n" +
+        "\n" +
+        "training:\n" +
+        "  data=DIR|FILE,FILE,...   .ls or .lick files to train on (all of them in DIR)\n" +
+        "  out=FILE                 where to save the brain\n" +
+        "  layers=100,100,100       hidden layer sizes\n" +
+        "  epochs=" + Params.DEFAULT_NUM_EPOCHS + "               epochs per layer\n" +
+        "  learningRate=" + Params.DEFAULT_ALPHA + "         learning rate\n" +
+        "  transpose=false          add every transposition of the inputs\n" +
+        "  windowing=true           cut the inputs into windows\n" +
+        "  windowLength=48          window length, in rows\n" +
+        "  stepSize=12              rows between the starts of two windows\n" +
+        "  batchSize=" + Params.DEFAULT_BATCH_SIZE + ", threads=" + Params.DEFAULT_TRAINING_THREADS +
+                ", hogwild=false, cacheRefresh=" + Params.DEFAULT_CACHE_REFRESH_EPOCHS + ", parallel=false\n" +
+        "                           (each of threads workers trains a mini-batch of its\n" +
+        "                           own; without hogwild one weight update sums them all,\n" +
+        "                           batchSize*threads inputs)\n" +
+        "  seed=N                   master seed, for reproducible runs\n" +
+        "  fastSigmoid=" + Params.DEFAULT_FAST_SIGMOID + "        logistic function from a table rather than\n" +
+        "                           Math.exp (training and generation)\n" +
+        "  compress=" + Params.COMPRESS_MODEL_FILES + "           deflate the saved brain (smaller, slower to load)\n" +
+        "  encoding=" + Params.DEFAULT_NOTE_ENCODING + "      one of " + Arrays.toString(NoteEncodings.values()) + "\n" +
+        "add-layer:\n" +
+        "  brain=FILE, layerSize=N, epochs=N (default: the brain's), out=FILE (default: brain)\n" +
+        "generation:\n" +
+        "  brain=FILE               the brain to generate with\n" +
+        "  chords=FILE              .ls or .lick file whose chords are the seed\n" +
+        "  cycles=" + Params.DEFAULT_NUM_GENERATION_CYCLES + ", outputs=" + Params.NUM_OUTPUTS +
+                ", outDir=" + Params.OUT_DIRECTORY + ", outName=" + Params.OUT_FILENAME + ", format=ls|lick\n" +
+        "  windowedGeneration=false, genStepSize=N, melodyRows=N (defaults: the brain's\n" +
+        "                           step size and twice its melody length)\n" +
+        "  windowCycles=N           cycles of every window after the first, which starts\n" +
+        "                           from the shifted melody of the one before (default:\n" +
+        "                           cycles)\n" +
+        "  mapWeights=false         map the weights of an uncompressed brain from its file\n" +
+        "                           (off the heap, shared with other processes)\n" +
+        "  thinning=" + Params.DEFAULT_THINNING + "               if > 0, draw all outputs from one chain, burned\n" +
+        "                           in for cycles cycles, every thinning cycles\n" +
+        "  finalActivation=maxprob|probdist|default, annealing=false (defaults: the\n" +
+        "                           brain's, which are these unless set when training)\n" +
+        "  converge=false           stop a generation early once it settles, after\n" +
+        "  minCycles=" + Params.DEFAULT_MIN_GENERATION_CYCLES + ", tolerance=" + Params.DEFAULT_CONVERGENCE_TOLERANCE +
+                ", patience=" + Params.DEFAULT_CONVERGENCE_PATIENCE + "  cycles, when patience cycles in a row change\n" +
+        "                           at most tolerance nodes (cycles is the maximum)\n";
+
+    private final Properties settings;
+
+    /**
+     *
+     * @param settings - the settings of the run, by key (see USAGE)
+     */
+    public BatchRunner(Properties settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        if (args.length == 0) {
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+        try {
+            BatchRunner runner = new BatchRunner(parseArguments(args, 1));
+            runner.run(args[0]);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     *
+     * @param args - the command line
+     * @param from - the index of the first setting in args
+     * @return - the settings of the properties file named by config=, if
+     * any, overridden by the KEY=VALUE arguments
+     */
+    public static Properties parseArguments(String[] args, int from) throws IOException {
+        Properties arguments = new Properties();
+        for (int i = from; i < args.length; i++) {
+            int index = args[i].indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Expected KEY=VALUE, got " + args[i]);
+            }
+            arguments.setProperty(args[i].substring(0, index), args[i].substring(index + 1));
+        }
+
+        Properties settings = new Properties();
+        String config = arguments.getProperty("config");
+        if (config != null) {
+            InputStream in = new FileInputStream(config);
+            try {
+                settings.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        settings.putAll(arguments);
+        return settings;
+    }
+
+    /**
+     *
+     * @param command - train, add-layer, generate or sweep
+     */
+    public void run(String command) throws IOException, InterruptedException {
+        if (command.equals("train")) {
+            train(settings, getString(settings, "out", null));
+        } else if (command.equals("add-layer")) {
+            addLayer();
+        } else if (command.equals("generate")) {
+            generate(settings, loadBrain(getString(settings, "brain", null),
+                    getBoolean(settings, "mapWeights", false)),
+                    getString(settings, "outName", Params.OUT_FILENAME));
+        } else if (command.equals("sweep")) {
+            sweep();
+        } else {
+            throw new IllegalArgumentException("Unknown command " + command);
+        }
+    }
+
+    /**
+     *
+     * @param run - the settings of this training
+     * @param out - the file to save the brain to
+     * @return - the trained brain
+     */
+    private MusicBrain train(Properties run, String out) throws IOException, InterruptedException {
+        File[] data = getDataFiles(getString(run, "data", null));
+        int[] layers = getInts(run, "layers", defaultLayers());
+        RbmConfig config = new RbmConfig(getFloat(run, "learningRate", Params.DEFAULT_ALPHA),
+                getFinalActivationMode(run, Params.DEFAULT_FINAL_ACTIVATION_MODE),
+                getBoolean(run, "annealing", Params.DEFAULT_GENERATIONAL_ANNEALING),
+                Params.NONE, getEncoding(run), getConvergenceRule(run, null),
+                getBoolean(run, "fastSigmoid", Params.DEFAULT_FAST_SIGMOID));
+        String seed = run.getProperty("seed");
+
+        MusicBrain brain = new MusicBrain(data, layers,
+                getInt(run, "epochs", Params.DEFAULT_NUM_EPOCHS), config,
+                getBoolean(run, "transpose", false), getBoolean(run, "windowing", true),
+                getInt(run, "windowLength", 48), getInt(run, "stepSize", 12));
+        if (seed != null) {
+            brain.setSeed(Long.parseLong(seed));
+            brain.resetWeights();
+        }
+        applyTrainingSettings(run, brain);
+
+        ConsoleListener listener = new ConsoleListener();
+        brain.setTrainingListeners(listener);
+        brain.train();
+        saveBrain(brain, out, run);
+        return brain;
+    }
+
+    private void addLayer() throws IOException, InterruptedException {
+        String brainFile = getString(settings, "brain", null);
+        MusicBrain brain = loadBrain(brainFile, false);
+        int layerSize = getInt(settings, "layerSize", -1);
+        if (layerSize <= 0) {
+            throw new IllegalArgumentException("layerSize must be given and positive");
+        }
+        brain.setNumEpochs(getInt(settings, "epochs", brain.getNumEpochs()));
+        brain.setConfig(brain.getConfig()
+                .withLearningRate(getFloat(settings, "learningRate", brain.getLearningRate())));
+        applyTrainingSettings(settings, brain);
+
+        brain.setTrainingListeners(new ConsoleListener());
+        brain.addLayerToBrain(layerSize);
+        saveBrain(brain, getString(settings, "out", brainFile), settings);
+    }
+
+    /**
+     *
+     * @param run - the settings of this generation
+     * @param brain - the brain to generate with
+     * @param outName - the start of the name of every output file
+     */
+    private void generate(Properties run, MusicBrain brain, String outName) throws IOException {
+        File chordFile = new File(getString(run, "chords", null));
+        if (!chordFile.isFile()) {
+            throw new FileNotFoundException("No chord file " + chordFile);
+        }
+        int numCycles = getInt(run, "cycles", Params.DEFAULT_NUM_GENERATION_CYCLES);
+        int numOutputs = getInt(run, "outputs", Params.NUM_OUTPUTS);
+        boolean windowed = getBoolean(run, "windowedGeneration", false);
+        int stepSize = getInt(run, "genStepSize", brain.getStepSize());
+        int melodyRows = getInt(run, "melodyRows", brain.getNumMelodyRows() * 2);
+        int windowCycles = getInt(run, "windowCycles", numCycles);
+        int thinning = getInt(run, "thinning", Params.DEFAULT_THINNING);
+        String format = getString(run, "format", "ls");
+        if (!format.equals("ls") && !format.equals("lick")) {
+            throw new IllegalArgumentException("format must be ls or lick");
+        }
+        if (windowed && (stepSize <= 0 || brain.getNumMelodyRows() % stepSize != 0)) {
+            throw new IllegalArgumentException("genStepSize must divide " + brain.getNumMelodyRows());
+        }
+        File outDir = new File(getString(run, "outDir", Params.OUT_DIRECTORY));
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Could not create " + outDir);
+        }
+
+        RbmConfig config = brain.getConfig();
+        brain.setConfig(config.withVisualDisplayMode(Params.NONE)
+                .withFinalActivationMode(getFinalActivationMode(run, config.getFinalActivationMode()))
+                .withGenerationalAnnealing(getBoolean(run, "annealing", config.isGenerationalAnnealing()))
+                .withConvergenceRule(getConvergenceRule(run, config.getConvergenceRule()))
+                .withFastSigmoid(getBoolean(run, "fastSigmoid", config.isFastSigmoid())));
+        NoteEncodings encoding = config.getNoteEncoding();
+
+        DataVessel generationSeed = FileParser.parseFile(chordFile, encoding);
+        if (generationSeed == null) {
+            throw new IOException("Could not read " + chordFile);
+        }
+        generationSeed = DataGenerator.chordData(generationSeed.getMelodySize(), generationSeed.getChords(),
+                brain.newSampler());
+        if (!windowed && generationSeed.getLength() != brain.getInputLength()) {
+            throw new IllegalArgumentException(chordFile + " has " + generationSeed.getNumRows()
+                    + " rows but the brain was trained on " + brain.getNumMelodyRows()
+                    + "; use windowedGeneration=true");
+        }
+
+        // the non-windowed outputs are sampled together in one batch, or
+        // drawn from one chain if thinning is set
+        DataVessel[] outputs = null;
+        GenerationMetrics[] metrics = new GenerationMetrics[numOutputs];
+        if (!windowed && thinning > 0) {
+            GenerationMetrics drawMetrics = new GenerationMetrics();
+            outputs = brain.generateThinned(generationSeed, numOutputs, numCycles, thinning, drawMetrics);
+            System.out.println("Drew " + numOutputs + " outputs from one chain (" + drawMetrics + ")");
+        } else if (!windowed) {
+            outputs = brain.generate(generationSeed, numOutputs, numCycles, metrics);
+        }
+
+        int rowsPerBeat = leadsheet.Constants.BEAT / leadsheet.Constants.RESOLUTION_SCALAR;
+        for (int i = 0; i < numOutputs; i++) {
+            String filename = new File(outDir, outName + "_" + i + "." + format).getPath();
+            if (windowed) {
+                // written window by window, as the windows are generated
+                metrics[i] = new GenerationMetrics();
+                MelodyWriter writer = FileParser.openMelodyWriter(filename,
+                        MusicBrain.getNumWindowedRows(melodyRows, stepSize), brain.getNumMelodyCols(),
+                        rowsPerBeat, encoding);
+                try {
+                    brain.loopingWindowedGenerate(generationSeed, numCycles, windowCycles, stepSize, melodyRows, writer, metrics[i]);
+                } finally {
+                    writer.close();
+                }
+            } else if (format.equals("lick")) {
+                FileParser.writeDataVesselToFile(outputs[i], filename);
+            } else {
+                FileParser.writeDataVesselToLeadsheet(outputs[i], rowsPerBeat, filename, encoding);
+            }
+            System.out.println("Wrote " + filename + ((metrics[i] != null) ? " (" + metrics[i] + ")" : ""));
+        }
+    }
+
+    /**
+     * Trains a brain for every combination of the values of the settings
+     * with several values, saving brain n to OUT_n.brain (out without
+     * .brain) and, if chords are given, generating from it into outDir
+     * with the file names outName_n_i.
+     */
+    private void sweep() throws IOException, InterruptedException {
+        List<String> keys = new ArrayList<String>();
+        List<String[]> values = new ArrayList<String[]>();
+        for (String key : settings.stringPropertyNames()) {
+            String[] options = settings.getProperty(key).split(";");
+            if (options.length > 1) {
+                keys.add(key);
+                values.add(options);
+            }
+        }
+        String out = getString(settings, "out", "sweep");
+        if (out.endsWith(".brain")) {
+            out = out.substring(0, out.length() - ".brain".length());
+        }
+        String outName = getString(settings, "outName", Params.OUT_FILENAME);
+
+        int[] choice = new int[keys.size()];
+        int run = 0;
+        do {
+            Properties current = new Properties();
+            current.putAll(settings);
+            StringBuilder description = new StringBuilder();
+            for (int k = 0; k < choice.length; k++) {
+                current.setProperty(keys.get(k), values.get(k)[choice[k]]);
+                description.append(' ').append(keys.get(k)).append('=').append(values.get(k)[choice[k]]);
+            }
+            System.out.println("Run " + run + ":" + description);
+
+            long start = System.currentTimeMillis();
+            MusicBrain brain = train(current, out + "_" + run + ".brain");
+            long elapsed = System.currentTimeMillis() - start;
+            if (current.getProperty("chords") != null) {
+                generate(current, brain, outName + "_" + run);
+            }
+            System.out.println("Run " + run + " done in " + elapsed + " ms:" + description);
+            run++;
+        } while (nextChoice(choice, values));
+    }
+
+    /*
+     * Method: nextChoice
+     *
+     * Advances choice, an index into each of the value lists, to the next
+     * combination like an odometer.  Returns false after the last one.
+     */
+    private static boolean nextChoice(int[] choice, List<String[]> values) {
+        for (int k = choice.length - 1; k >= 0; k--) {
+            if (++choice[k] < values.get(k).length) {
+                return true;
+            }
+            choice[k] = 0;
+        }
+        return false;
+    }
+
+    private static void applyTrainingSettings(Properties run, MusicBrain brain) {
+        brain.setBatchSize(getInt(run, "batchSize", brain.getBatchSize()));
+        brain.setTrainingThreads(getInt(run, "threads", brain.getTrainingThreads()));
+        brain.setHogwild(getBoolean(run, "hogwild", brain.isHogwild()));
+        brain.setCacheRefreshEpochs(getInt(run, "cacheRefresh", brain.getCacheRefreshEpochs()));
+        brain.setParallel(getBoolean(run, "parallel", brain.isParallel()));
+    }
+
+    private static MusicBrain loadBrain(String filename, boolean mapWeights) throws IOException {
+        if (!new File(filename).isFile()) {
+            throw new FileNotFoundException("No brain " + filename);
+        }
+        if (ModelFile.isModelFile(filename)) {
+            return ModelFile.read(filename, mapWeights);
+        }
+        MusicBrain brain = FileParser.readBrain(filename);
+        if (brain == null) {
+            throw new IOException("Could not read brain " + filename);
+        }
+        return brain;
+    }
+
+    private static void saveBrain(MusicBrain brain, String filename, Properties run) throws IOException {
+        if (!filename.endsWith(".brain")) filename += ".brain";
+        File parent = new File(filename).getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        ModelFile.write(brain, filename, getBoolean(run, "compress", Params.COMPRESS_MODEL_FILES));
+        System.out.println("Saved " + filename);
+    }
+
+    /*
+     * Method: getDataFiles
+     *
+     * Returns the .ls and .lick files of a directory (in name order) or of a
+     * comma separated list, checking that they are all of the same type.
+     */
+    private static File[] getDataFiles(String data) throws IOException {
+        List<File> files = new ArrayList<File>();
+        File dir = new File(data);
+        if (dir.isDirectory()) {
+            File[] contents = dir.listFiles(new FileFilter() {
+                public boolean accept(File f) {
+                    return f.isFile() && (f.getName().endsWith(".ls") || f.getName().endsWith(".lick"));
+                }
+            });
+            Arrays.sort(contents);
+            files.addAll(Arrays.asList(contents));
+        } else {
+            for (String name : data.split(",")) {
+                File f = new File(name.trim());
+                if (!f.isFile()) {
+                    throw new FileNotFoundException("No data file " + f);
+                }
+                files.add(f);
+            }
+        }
+        if (files.isEmpty()) {
+            throw new FileNotFoundException("No .ls or .lick files in " + data);
+        }
+        String extension = FileParser.getExtension(files.get(0));
+        for (File f : files) {
+            if (!FileParser.getExtension(f).equals(extension)) {
+                throw new IllegalArgumentException("Input files are of different types");
+            }
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
+    private static int getFinalActivationMode(Properties run, int defaultValue) {
+        String value = run.getProperty("finalActivation");
+        if (value == null) {
+            return defaultValue;
+        } else if (value.trim().equals("maxprob")) {
+            return Params.MAX_PROB;
+        } else if (value.trim().equals("probdist")) {
+            return Params.PROB_DIST;
+        } else if (value.trim().equals("default")) {
+            return Params.DEFAULT;
+        }
+        throw new IllegalArgumentException("finalActivation must be maxprob, probdist or default");
+    }
+
+    private static ConvergenceRule getConvergenceRule(Properties run, ConvergenceRule defaultRule) {
+        if (!getBoolean(run, "converge", defaultRule != null)) {
+            return null;
+        }
+        ConvergenceRule base = (defaultRule != null) ? defaultRule : ConvergenceRule.DEFAULT;
+        return new ConvergenceRule(getInt(run, "minCycles", base.getMinCycles()),
+                getInt(run, "tolerance", base.getTolerance()),
+                getInt(run, "patience", base.getPatience()));
+    }
+
+    private static NoteEncodings getEncoding(Properties run) {
+        String value = run.getProperty("encoding");
+        if (value == null) {
+            return Params.DEFAULT_NOTE_ENCODING;
+        }
+        try {
+            return NoteEncodings.valueOf(value.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("encoding must be one of " + Arrays.toString(NoteEncodings.values()));
+        }
+    }
+
+    private static int[] defaultLayers() {
+        int[] layers = new int[Params.NUM_LAYERS];
+        Arrays.fill(layers, Params.DEFAULT_LAYER_SIZE);
+        return layers;
+    }
+
+    private static String getString(Properties run, String key, String defaultValue) {
+        String value = run.getProperty(key, defaultValue);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing setting " + key);
+        }
+        return value.trim();
+    }
+
+    private static int getInt(Properties run, String key, int defaultValue) {
+        String value = run.getProperty(key);
+        try {
+            return (value == null) ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Setting " + key + " must be a whole number");
+        }
+    }
+
+    private static int[] getInts(Properties run, String key, int[] defaultValue) {
+        String value = run.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        String[] parts = value.split(",");
+        int[] ints = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                ints[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Setting " + key + " must be a list of whole numbers");
+            }
+        }
+        return ints;
+    }
+
+    private static float getFloat(Properties run, String key, float defaultValue) {
+        String value = run.getProperty(key);
+        try {
+            return (value == null) ? defaultValue : Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Setting " + key + " must be a number");
+        }
+    }
+
+    private static boolean getBoolean(Properties run, String key, boolean defaultValue) {
+        String value = run.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        } else if (value.trim().equalsIgnoreCase("true")) {
+            return true;
+        } else if (value.trim().equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Setting " + key + " must be true or false");
+    }
+
+    /**
+     * Prints the training progress, one line per epoch, to System.out.
+     */
+    static class ConsoleListener implements TrainingListener {
+
+        public void trainingStarted(int numLayers, int numEpochs, int numInputs) {
+            System.out.println("Training " + numLayers + " layers for " + numEpochs
+                    + " epochs on " + numInputs + " inputs");
+        }
+
+        public void layerStarted(int layer) {
+            System.out.println("Training layer " + layer);
+        }
+
+        public void epochStarted(int layer, int epoch, float energy) {
+            System.out.println("  layer " + layer + ", epoch " + epoch + ": energy " + energy);
+        }
+
+        public void progress(int layer, int epoch, int input) {
+        }
+
+        public void trainingStopped() {
+            System.out.println("Training stopped");
+        }
+
+        public void trainingFinished(long elapsedMillis) {
+            java.text.DecimalFormat df = new java.text.DecimalFormat("#.##");
+            System.out.println("Finished training in " + df.format(elapsedMillis / 60000.0) + " minutes");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package rbm;
+
+import java.io.Serializable;
+
+/**
+ * class ConvergenceRule
+ *
+ * When a generation may stop before its full number of cycles.  After each
+ * cycle a GibbsChain counts the input nodes that changed since the cycle
+ * before (the Hamming distance between successive input states); a cycle in
+ * which at most tolerance nodes changed is settled, and the chain stops once
+ * patience settled cycles in a row follow at least minCycles cycles.  The
+ * number of cycles given to the generation stays the maximum.
+ */
+public final class ConvergenceRule implements Serializable {
+
+    static final long serialVersionUID = -4410872312963125830L;
+
+    public static final ConvergenceRule DEFAULT = new ConvergenceRule(Params.DEFAULT_MIN_GENERATION_CYCLES,
+            Params.DEFAULT_CONVERGENCE_TOLERANCE, Params.DEFAULT_CONVERGENCE_PATIENCE);
+
+    private final int minCycles;
+    private final int tolerance;
+    private final int patience;
+
+    /**
+     *
+     * @param minCycles - the number of cycles to run before stopping is allowed
+     * @param tolerance - the largest number of changed input nodes for which
+     * a cycle counts as settled
+     * @param patience - the number of settled cycles in a row needed to stop
+     */
+    public ConvergenceRule(int minCycles, int tolerance, int patience) {
+        if (minCycles < 0 || tolerance < 0) {
+            throw new IllegalArgumentException("Minimum cycles and tolerance must not be negative");
+        }
+        if (patience < 1) {
+            throw new IllegalArgumentException("Patience must be at least 1: " + patience);
+        }
+        this.minCycles = minCycles;
+        this.tolerance = tolerance;
+        this.patience = patience;
+    }
+
+    public int getMinCycles() {
+        return minCycles;
+    }
+
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    public int getPatience() {
+        return patience;
+    }
+
+    /**
+     *
+     * @param distance - the number of input nodes changed by the last cycle
+     * @return - whether that cycle counts as settled
+     */
+    public boolean isSettled(int distance) {
+        return distance <= tolerance;
+    }
+
+    /**
+     *
+     * @param cycles - the number of cycles run so far
+     * @param settledCycles - the number of settled cycles in a row up to now
+     * @return - whether the chain may stop
+     */
+    public boolean isConverged(int cycles, int settledCycles) {
+        return cycles >= minCycles && settledCycles >= patience;
+    }
+
+    @Override
+    public String toString() {
+        return "minCycles=" + minCycles + ", tolerance=" + tolerance + ", patience=" + patience;
+    }
+}
@@ -22,7 +22,6 @@
 
 package rbm;
 
-import java.util.Random;
 import encoding.Encoding;
 
 public class DataGenerator
@@ -60,10 +59,21 @@ public class DataGenerator
      * @return an array of numBits integers randomly assigned the value 0 or 1
      */
     public static int[] randomData(int numBits)
+    {
+        return randomData(numBits, Sampler.forThread());
+    }
+
+    /**
+     *
+     * @param numBits - the number of bits of data to generate
+     * @param rand - the source of randomness
+     * @return an array of numBits integers randomly assigned the value 0 or 1
+     */
+    public static int[] randomData(int numBits, Sampler rand)
     {
         int[] data = new int[numBits];
         for (int i=0; i<numBits; ++i)
-            data[i] = getBit();
+            data[i] = getBit(rand);
         return data;
     }
 
@@ -75,7 +85,19 @@ public class DataGenerator
      */
     public static DataVessel chordData(int numBits, int[] chord)
     {
-        int[] melodyArray = randomData(numBits);
+        return chordData(numBits, chord, Sampler.forThread());
+    }
+
+    /**
+     *
+     * @param numBits - the number of bits of melody data to generate
+     * @param chord - an array of chord bits for the generated data to use
+     * @param rand - the source of randomness
+     * @return - a new data vessel with the given chord data and random melody data.
+     */
+    public static DataVessel chordData(int numBits, int[] chord, Sampler rand)
+    {
+        int[] melodyArray = randomData(numBits, rand);
         int numRows = chord.length/Encoding.NUM_CHORD_COLUMNS;
         int numCols = numBits/numRows;
         return new DataVessel(melodyArray, chord, numRows, numCols);
@@ -96,11 +118,11 @@ public class DataGenerator
 
     /**
      *
+     * @param rand - the source of randomness
      * @return an integer randomly assigned the value 0 or 1
      */
-    private static int getBit()
+    private static int getBit(Sampler rand)
     {
-        Random rand = new Random();
         if (rand.nextBoolean())
             return 1;
         else
@@ -121,6 +121,37 @@ public class DataVessel implements Serializable {
         return newArray;
     }
 
+    /**
+     *
+     * @return - the indices into getData() of every bit that is set to 1, in
+     * increasing order. The encodings are mostly zeros, so this is usually
+     * far shorter than the data itself.
+     */
+    public int[] getActiveIndices() {
+        int melodySize = getMelodySize();
+        int numActive = countActive(melody) + countActive(chords);
+        int[] active = new int[numActive];
+
+        int k = 0;
+        for (int i = 0; i < melodySize; i++) {
+            if (melody[i] == 1) active[k++] = i;
+        }
+        for (int i = 0; i < getChordsSize(); i++) {
+            if (chords[i] == 1) active[k++] = melodySize + i;
+        }
+        return active;
+    }
+
+    private static int countActive(int[] bits) {
+        int count = 0;
+        if (bits != null) {
+            for (int bit : bits) {
+                if (bit == 1) count++;
+            }
+        }
+        return count;
+    }
+
     /**
      *
      * @return - the total length of the DataVessel
@@ -0,0 +1,252 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package rbm;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * class DatasetFile
+ *
+ * The training inputs of a brain (after transposition and windowing), saved
+ * once beside the brains trained on them instead of inside every one of
+ * them.  A dataset file is named after the SHA-256 hash of its contents,
+ * so brains and checkpoints trained on the same inputs share one file, and
+ * a brain keeps only the hash (see class ModelFile).  The files live in the
+ * directory Params.DATASET_DIRECTORY next to the brains.
+ *
+ * The format follows that of ModelFile:
+ *
+ *   header, never compressed
+ *     4 bytes      "RBMD"
+ *     int          FORMAT_VERSION
+ *     int          flags: ModelFile.COMPRESSED if the rest is deflated
+ *   inputs (writeInputs)
+ *     int          number of inputs, then for each: int numRows,
+ *                  int numCols, the melody and the chords, each as its int
+ *                  length and its 0s and 1s packed eight to a byte, the
+ *                  first in the lowest bit
+ *
+ * The hash is that of the inputs section before compression, in lowercase
+ * hex.
+ */
+public final class DatasetFile {
+
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte[] MAGIC = {'R', 'B', 'M', 'D'};
+    private static final String EXTENSION = ".rbmd";
+
+    private DatasetFile() {
+    }
+
+    /**
+     *
+     * @param brainFile - a brain file
+     * @return - the directory of the datasets of the brains next to it
+     */
+    public static File getDirectory(File brainFile) {
+        return new File(brainFile.getAbsoluteFile().getParentFile(), Params.DATASET_DIRECTORY);
+    }
+
+    /**
+     *
+     * @param directory - a dataset directory
+     * @param hash - the hash of a dataset
+     * @return - the file of the dataset in the directory
+     */
+    public static File getFile(File directory, String hash) {
+        return new File(directory, hash + EXTENSION);
+    }
+
+    /**
+     *
+     * @param inputs - training inputs
+     * @return - the hash that names their dataset file
+     */
+    public static String hash(DataVessel[] inputs) {
+        try {
+            MessageDigest digest = newDigest();
+            ModelFile.Output out = new ModelFile.Output(null, 0, digest);
+            writeInputs(out, inputs);
+            out.flush();
+            return toHex(digest.digest());
+        } catch (IOException e) {
+            // nothing is written
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     *
+     * @param inputs - training inputs
+     * @param hash - their hash (see hash)
+     * @param directory - the dataset directory to save them in (created if
+     * need be)
+     *
+     * Saves the inputs in the directory, unless their file is already there
+     */
+    public static void write(DataVessel[] inputs, String hash, File directory) throws IOException {
+        File target = getFile(directory, hash);
+        if (target.isFile()) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        Path temp = target.toPath().resolveSibling(target.getName() + ".tmp");
+        try {
+            writeFile(inputs, temp.toString(), Params.COMPRESS_DATASET_FILES);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        ModelFile.replace(temp, target.toPath());
+    }
+
+    private static void writeFile(DataVessel[] inputs, String filename, boolean compress) throws IOException {
+        FileOutputStream file = new FileOutputStream(filename);
+        Deflater deflater = null;
+        try {
+            FileChannel channel = file.getChannel();
+            ModelFile.writeHeader(channel, MAGIC, FORMAT_VERSION, compress ? ModelFile.COMPRESSED : 0);
+
+            WritableByteChannel body = channel;
+            if (compress) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+                body = Channels.newChannel(new DeflaterOutputStream(
+                        Channels.newOutputStream(channel), deflater, ModelFile.BUFFER_SIZE));
+            }
+            ModelFile.Output out = new ModelFile.Output(body, ModelFile.HEADER_SIZE);
+            writeInputs(out, inputs);
+            out.flush();
+            body.close(); // finishes the deflated stream
+        } finally {
+            file.close();
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     *
+     * @param directory - the dataset directory
+     * @param hash - the hash of the dataset
+     * @return - the inputs saved in its file, checked against the hash
+     */
+    public static DataVessel[] read(File directory, String hash) throws IOException {
+        File source = getFile(directory, hash);
+        FileInputStream file = new FileInputStream(source);
+        Inflater inflater = null;
+        DataVessel[] inputs;
+        try {
+            FileChannel channel = file.getChannel();
+            String description = "The dataset file " + source;
+            int flags = ModelFile.readHeader(channel, MAGIC, FORMAT_VERSION, description).getInt(8);
+
+            ReadableByteChannel body = channel;
+            if ((flags & ModelFile.COMPRESSED) != 0) {
+                inflater = new Inflater();
+                body = Channels.newChannel(new InflaterInputStream(
+                        Channels.newInputStream(channel), inflater, ModelFile.BUFFER_SIZE));
+            }
+            inputs = readInputs(new ModelFile.Input(body, ModelFile.HEADER_SIZE, channel, inflater));
+        } finally {
+            file.close();
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+        if (inputs == null || !hash(inputs).equals(hash)) {
+            throw new IOException("The dataset file " + source + " does not match its name");
+        }
+        return inputs;
+    }
+
+    /**
+     *
+     * @param out - the dataset file being written (or hashed)
+     * @param inputs - the inputs to write (may be null)
+     */
+    private static void writeInputs(ModelFile.Output out, DataVessel[] inputs) throws IOException {
+        out.writeInt((inputs == null) ? -1 : inputs.length);
+        if (inputs != null) {
+            for (DataVessel vessel : inputs) {
+                out.writeInt(vessel.getNumRows());
+                out.writeInt(vessel.getNumCols());
+                out.writeBits(vessel.getMelody());
+                out.writeBits(vessel.getChords());
+            }
+        }
+    }
+
+    /**
+     *
+     * @param in - the dataset file being read
+     * @return - the inputs written by writeInputs
+     */
+    private static DataVessel[] readInputs(ModelFile.Input in) throws IOException {
+        // each input takes at least its two dimensions and two lengths
+        int numInputs = in.readLength(true, 128);
+        if (numInputs < 0) {
+            return null;
+        }
+        DataVessel[] inputs = new DataVessel[numInputs];
+        for (int i = 0; i < numInputs; i++) {
+            int numRows = in.readInt();
+            int numCols = in.readInt();
+            int[] melody = in.readBits();
+            int[] chords = in.readBits();
+            inputs[i] = new DataVessel(melody, chords, numRows, numCols);
+        }
+        return inputs;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+} // end of class DatasetFile
@@ -30,7 +30,7 @@ import java.util.*;
  *
  * @author Greg Bickerman
  */
-public class EnergyDisplay extends JPanel{
+public class EnergyDisplay extends JPanel implements TrainingListener{
 
     //constants
     private static final int RADIUS = 4;
@@ -99,6 +99,25 @@ public class EnergyDisplay extends JPanel{
         repaint();
     }
 
+    /**
+     * The training events below come from the training thread; the energy of
+     * each epoch is handed to addPoint on the event dispatch thread.  The
+     * display is reset by its owner before training starts.
+     */
+    public void epochStarted(final int layer, int epoch, final float energy) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                addPoint(layer, energy);
+            }
+        });
+    }
+
+    public void trainingStarted(int numLayers, int numEpochs, int numInputs) {}
+    public void layerStarted(int layer) {}
+    public void progress(int layer, int epoch, int input) {}
+    public void trainingStopped() {}
+    public void trainingFinished(long elapsedMillis) {}
+
     /**
      *
      * This method should never be called.  It overwrites a JPanel method
@@ -37,6 +37,7 @@ import java.io.*;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import encoding.Encoding;
+import encoding.NoteEncodings;
 
 public class FileParser {
 
@@ -46,10 +47,21 @@ public class FileParser {
      * @return a DataVessel containing data from the parsed file
      */
     public static DataVessel parseFile(String filename) {
+        return parseFile(filename, Params.DEFAULT_NOTE_ENCODING);
+    }
+
+    /**
+     *
+     * @param filename - the file to parse
+     * @param encoding - the note encoding for leadsheets (.lick files hold
+     * the encoded bits themselves)
+     * @return a DataVessel containing data from the parsed file
+     */
+    public static DataVessel parseFile(String filename, NoteEncodings encoding) {
         if (getExtension(filename).equals(".lick")) {
             return parseLickFile(filename);
         } else if (getExtension(filename).equals(".ls")) {
-            return leadsheet.LeadSheetHandler.parseLeadSheetLick(filename);
+            return leadsheet.LeadSheetHandler.parseLeadSheetLick(filename, encoding);
         }
         else
         {
@@ -66,6 +78,16 @@ public class FileParser {
         return parseFile(file.getAbsolutePath());
     }
 
+    /**
+     *
+     * @param file - the file to parse
+     * @param encoding - the note encoding for leadsheets
+     * @return a DataVessel containing data from the parsed file
+     */
+    public static DataVessel parseFile(File file, NoteEncodings encoding) {
+        return parseFile(file.getAbsolutePath(), encoding);
+    }
+
     /**
      * 
      * @param filename - the name of the .lick file to parse lick data from
@@ -120,9 +142,19 @@ public class FileParser {
      *
      */
     public static DataVessel[] parseAllFiles(File[] files) {
+        return parseAllFiles(files, Params.DEFAULT_NOTE_ENCODING);
+    }
+
+    /**
+     *
+     * @param files - an array of files to read melodies and their chords from
+     * @param encoding - the note encoding for leadsheets
+     * @return - an array of DataVessels, one for each file
+     */
+    public static DataVessel[] parseAllFiles(File[] files, NoteEncodings encoding) {
         DataVessel[] licks = new DataVessel[files.length];
         for (int fileIndex = 0; fileIndex < files.length; fileIndex++) {
-            licks[fileIndex] = parseFile(files[fileIndex]);
+            licks[fileIndex] = parseFile(files[fileIndex], encoding);
         }
         return licks;
     }
@@ -356,19 +388,15 @@ public class FileParser {
      *
      */
     
-    private static void writeArrayToStream(int[] data, int rows, BufferedWriter out) {
+    static void writeArrayToStream(int[] data, int rows, BufferedWriter out) throws IOException {
         if (data.length > 0) {
-            try {
-                int cols = data.length / rows;
-                for (int i = 0; i < rows; ++i) {
-                    out.write(data[i * cols] + "");
-                    for (int j = 1; j < (cols); ++j) {
-                        out.write(" " + data[i * cols + j]);
-                    }
-                    out.newLine();
+            int cols = data.length / rows;
+            for (int i = 0; i < rows; ++i) {
+                out.write(data[i * cols] + "");
+                for (int j = 1; j < (cols); ++j) {
+                    out.write(" " + data[i * cols + j]);
                 }
-            } catch (IOException e) {
-                System.err.println("Error writing to file");
+                out.newLine();
             }
         }
     }
@@ -417,6 +445,30 @@ public class FileParser {
         writeDataVesselToFile(output, file.getAbsolutePath());
     }
 
+    /**
+     *
+     * @param filename - the .lick or .ls file to write to
+     * @param numRows - the number of rows that will be written (only needed
+     * for .lick files, which start with it)
+     * @param numCols - the number of melody columns per row
+     * @param rowsPerBeat - the number of rows per beat (only for leadsheets)
+     * @param encoding - the note encoding of the melody (only for leadsheets)
+     * @return - a writer that adds the rows given to it to the file as they
+     * come, for streaming a windowed generation to disk
+     *
+     * The file is complete once the writer is closed
+     */
+    public static MelodyWriter openMelodyWriter(String filename, int numRows, int numCols,
+            int rowsPerBeat, NoteEncodings encoding) throws IOException {
+        if (getExtension(filename).equals(".lick")) {
+            return new LickWriter(filename, numRows, numCols);
+        } else if (getExtension(filename).equals(".ls")) {
+            return new leadsheet.LeadSheetWriter(filename, rowsPerBeat, encoding);
+        } else {
+            throw new IllegalArgumentException("Cannot write " + filename + ": not a .lick or .ls file");
+        }
+    }
+
     /**
      *
      * @param output - the DataVessel to write in leadsheet format
@@ -427,6 +479,17 @@ public class FileParser {
         leadsheet.LeadSheetHandler.writeLeadSheet(output, rowsPerBeat, filename);
     }
 
+    /**
+     *
+     * @param output - the DataVessel to write in leadsheet format
+     * @param rowsPerBeat - the number of rows per beat in the DataVessel (i.e. resolution)
+     * @param filename - the name of the file to write out to
+     * @param encoding - the note encoding of the DataVessel
+     */
+    public static void writeDataVesselToLeadsheet(DataVessel output, int rowsPerBeat, String filename, NoteEncodings encoding) {
+        leadsheet.LeadSheetHandler.writeLeadSheet(output, rowsPerBeat, filename, encoding);
+    }
+
     /**
      *
      * @param output - the DataVessel to write in leadsheet format
@@ -510,6 +573,43 @@ public class FileParser {
         return readObject(file.getAbsolutePath());
     }
 
+    /**
+     *
+     * @param brain - the brain to save
+     * @param filename - the name of the file to write to
+     *
+     * Saves the brain in the binary model format (see class ModelFile)
+     */
+    public static void writeBrain(MusicBrain brain, String filename) {
+        try {
+            ModelFile.write(brain, filename, Params.COMPRESS_MODEL_FILES);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     *
+     * @param filename - the name of a file written by writeBrain, or of a
+     * brain written by writeObject before there was a model format
+     * @return - the brain read from the file (null if something goes wrong)
+     */
+    public static MusicBrain readBrain(String filename) {
+        if (!ModelFile.isModelFile(filename)) {
+            return (MusicBrain) readObject(filename);
+        }
+        try {
+            return ModelFile.read(filename);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public static MusicBrain readBrain(File file) {
+        return readBrain(file.getAbsolutePath());
+    }
+
     /**
      *
      * @param filename
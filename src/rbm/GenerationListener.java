@@ -0,0 +1,40 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package rbm;
+
+/**
+ * interface GenerationListener
+ *
+ * Receives the rows of a windowed generation (see
+ * MusicBrain.loopingWindowedGenerate) as soon as each window has settled
+ * them, in order and without gaps, so that a long melody can be played or
+ * written before all of it is generated.  Called on the generating thread.
+ */
+public interface GenerationListener {
+
+    /**
+     * @param rows - the finished rows, melody and chords (a new DataVessel,
+     * which the listener may keep)
+     * @param firstRow - the index of the first of them in the whole output
+     */
+    public void rowsGenerated(DataVessel rows, int firstRow);
+}
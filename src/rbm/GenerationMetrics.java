@@ -0,0 +1,94 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package rbm;
+
+/**
+ * class GenerationMetrics
+ *
+ * What the runs of a GibbsChain took: how many runs (one per window of a
+ * windowed generation), how many cycles they used in all, how many of them
+ * stopped early by their ConvergenceRule, and how long they took.  Used to
+ * tune the number of cycles against the quality of the melodies.
+ */
+public class GenerationMetrics {
+
+    private int runs = 0;
+    private int cycles = 0;
+    private int convergedRuns = 0;
+    private long nanos = 0;
+
+    /**
+     *
+     * @param runCycles - the cycles used by the run (without the final one)
+     * @param converged - whether the run stopped early
+     * @param runNanos - the time the run took
+     */
+    void addRun(int runCycles, boolean converged, long runNanos) {
+        runs++;
+        cycles += runCycles;
+        if (converged) {
+            convergedRuns++;
+        }
+        nanos += runNanos;
+    }
+
+    /**
+     *
+     * @param other - the metrics whose runs to add to these
+     */
+    void add(GenerationMetrics other) {
+        runs += other.runs;
+        cycles += other.cycles;
+        convergedRuns += other.convergedRuns;
+        nanos += other.nanos;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public int getCycles() {
+        return cycles;
+    }
+
+    public int getConvergedRuns() {
+        return convergedRuns;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     *
+     * @return - the mean number of cycles per run
+     */
+    public float getCyclesPerRun() {
+        return runs == 0 ? 0 : (float) cycles / runs;
+    }
+
+    @Override
+    public String toString() {
+        return runs + " run(s), " + cycles + " cycles (" + String.format("%.1f", getCyclesPerRun())
+                + " per run), " + convergedRuns + " converged, " + String.format("%.1f", nanos / 1e6) + " ms";
+    }
+}
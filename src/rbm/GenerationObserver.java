@@ -0,0 +1,44 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+/**
+ * interface GenerationObserver
+ *
+ * Receives snapshots of the visible layer while a LayeredRBM generates.
+ * Snapshots are delivered by a SnapshotPublisher on a thread of its choosing,
+ * never on the generating thread, so an observer may take its time without
+ * slowing the sampler down; snapshots that arrive while it is busy are
+ * dropped in favour of the newest one.
+ */
+public interface GenerationObserver {
+
+    /**
+     *
+     * @param cycle - the generation cycle the snapshot was taken after
+     * @param values - the visible layer as rows and columns: node states, or
+     * activation probabilities, depending on the visual display mode.
+     * The array is not reused by the generator.
+     */
+    void snapshot(int cycle, float[][] values);
+}
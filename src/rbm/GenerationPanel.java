@@ -57,6 +57,8 @@ public class GenerationPanel extends javax.swing.JPanel {
         windowGenBox.setEnabled(enabled);
         stepSizeField.setEnabled(enabled && windowGenBox.isSelected());
         newMelodySizeField.setEnabled(enabled && windowGenBox.isSelected());
+        thinningField.setEnabled(enabled && !windowGenBox.isSelected());
+        windowCyclesField.setEnabled(enabled && windowGenBox.isSelected());
         writeLickButton.setEnabled(enabled);
         writeLSButton.setEnabled(enabled);
     }
@@ -88,6 +90,10 @@ public class GenerationPanel extends javax.swing.JPanel {
         stepSizeField = new javax.swing.JTextField();
         jLabel8 = new javax.swing.JLabel();
         newMelodySizeField = new javax.swing.JTextField();
+        jLabel9 = new javax.swing.JLabel();
+        thinningField = new javax.swing.JTextField();
+        jLabel10 = new javax.swing.JLabel();
+        windowCyclesField = new javax.swing.JTextField();
         jLabel4 = new javax.swing.JLabel();
         outFilenameField = new javax.swing.JTextField();
         outDirectoryField = new javax.swing.JTextField();
@@ -106,17 +112,17 @@ public class GenerationPanel extends javax.swing.JPanel {
         buttonGroup1.add(writeLSButton);
 
         setBorder(javax.swing.BorderFactory.createTitledBorder(null, "Generation", javax.swing.border.TitledBorder.DEFAULT_JUSTIFICATION, javax.swing.border.TitledBorder.DEFAULT_POSITION, new java.awt.Font("Lucida Grande", 1, 13))); // NOI18N
-        setMinimumSize(new java.awt.Dimension(490, 275));
-        setPreferredSize(new java.awt.Dimension(490, 275));
+        setMinimumSize(new java.awt.Dimension(490, 325));
+        setPreferredSize(new java.awt.Dimension(490, 325));
         setLayout(new java.awt.GridBagLayout());
 
-        jPanel1.setMinimumSize(new java.awt.Dimension(480, 250));
-        jPanel1.setPreferredSize(new java.awt.Dimension(480, 250));
+        jPanel1.setMinimumSize(new java.awt.Dimension(480, 300));
+        jPanel1.setPreferredSize(new java.awt.Dimension(480, 300));
         jPanel1.setLayout(new java.awt.GridBagLayout());
 
-        jPanel3.setMinimumSize(new java.awt.Dimension(475, 160));
+        jPanel3.setMinimumSize(new java.awt.Dimension(475, 210));
         jPanel3.setOpaque(false);
-        jPanel3.setPreferredSize(new java.awt.Dimension(475, 160));
+        jPanel3.setPreferredSize(new java.awt.Dimension(475, 210));
         jPanel3.setLayout(new java.awt.GridBagLayout());
 
         jLabel1.setText("Generation Cycles");
@@ -212,6 +218,53 @@ public class GenerationPanel extends javax.swing.JPanel {
         gridBagConstraints.insets = new java.awt.Insets(0, 5, 5, 0);
         jPanel3.add(newMelodySizeField, gridBagConstraints);
 
+        jLabel9.setText("Thinning (0 = off)");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 6;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.EAST;
+        jPanel3.add(jLabel9, gridBagConstraints);
+
+        thinningField.setEditable(false);
+        thinningField.setText(Params.DEFAULT_THINNING+"");
+        thinningField.setEnabled(false);
+        thinningField.setMinimumSize(new java.awt.Dimension(50, 20));
+        thinningField.setPreferredSize(new java.awt.Dimension(50, 20));
+        thinningField.addMouseListener(new java.awt.event.MouseAdapter() {
+            public void mouseClicked(java.awt.event.MouseEvent evt) {
+                thinningFieldMouseClicked(evt);
+            }
+        });
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 6;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(0, 5, 5, 0);
+        jPanel3.add(thinningField, gridBagConstraints);
+
+        jLabel10.setText("Window Cycles (0 = all)");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 7;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.EAST;
+        jPanel3.add(jLabel10, gridBagConstraints);
+
+        windowCyclesField.setEditable(false);
+        windowCyclesField.setText("0");
+        windowCyclesField.setMinimumSize(new java.awt.Dimension(50, 20));
+        windowCyclesField.setPreferredSize(new java.awt.Dimension(50, 20));
+        windowCyclesField.addMouseListener(new java.awt.event.MouseAdapter() {
+            public void mouseClicked(java.awt.event.MouseEvent evt) {
+                windowCyclesFieldMouseClicked(evt);
+            }
+        });
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 7;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(0, 5, 5, 0);
+        jPanel3.add(windowCyclesField, gridBagConstraints);
+
         jLabel4.setText("Output Filename");
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
@@ -293,7 +346,7 @@ public class GenerationPanel extends javax.swing.JPanel {
         gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
         jPanel2.add(jLabel5, gridBagConstraints);
 
-        genAnnealBox.setSelected(Params.GENERATIONAL_ANNEALING);
+        genAnnealBox.setSelected(Params.DEFAULT_GENERATIONAL_ANNEALING);
         genAnnealBox.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
                 genAnnealBoxActionPerformed(evt);
@@ -450,8 +503,55 @@ public class GenerationPanel extends javax.swing.JPanel {
     private void windowGenBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_windowGenBoxActionPerformed
         stepSizeField.setEnabled(windowGenBox.isSelected());
         newMelodySizeField.setEnabled(windowGenBox.isSelected());
+        thinningField.setEnabled(!windowGenBox.isSelected());
+        windowCyclesField.setEnabled(windowGenBox.isSelected());
     }//GEN-LAST:event_windowGenBoxActionPerformed
 
+    private void thinningFieldMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_thinningFieldMouseClicked
+        while (thinningField.isEnabled()) {
+            String input = JOptionPane.showInputDialog(
+                    this,
+                    "Set number of generation cycles between outputs of one chain\n" +
+                    "(0 generates every output on its own chain)",
+                    "Thinning",
+                    JOptionPane.PLAIN_MESSAGE);
+            if (input==null)
+                break;
+            try {
+                int parsedInput = Integer.parseInt(input);
+                if (parsedInput >= 0) {
+                    thinningField.setText(parsedInput+"");
+                    break;
+                }
+            } catch (NumberFormatException e) {
+                //try again
+            }
+        }
+    }//GEN-LAST:event_thinningFieldMouseClicked
+
+    private void windowCyclesFieldMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_windowCyclesFieldMouseClicked
+        while (windowCyclesField.isEnabled()) {
+            String input = JOptionPane.showInputDialog(
+                    this,
+                    "Set number of generation cycles of every window after the first,\n" +
+                    "which starts from the shifted melody of the window before it\n" +
+                    "(0 runs as many as the first)",
+                    "Window Cycles",
+                    JOptionPane.PLAIN_MESSAGE);
+            if (input==null)
+                break;
+            try {
+                int parsedInput = Integer.parseInt(input);
+                if (parsedInput >= 0) {
+                    windowCyclesField.setText(parsedInput+"");
+                    break;
+                }
+            } catch (NumberFormatException e) {
+                //try again
+            }
+        }
+    }//GEN-LAST:event_windowCyclesFieldMouseClicked
+
     private void newMelodySizeFieldMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_newMelodySizeFieldMouseClicked
         while (newMelodySizeField.isEnabled()) {
             String input = (String)(JOptionPane.showInputDialog(
@@ -474,13 +574,17 @@ public class GenerationPanel extends javax.swing.JPanel {
     }//GEN-LAST:event_newMelodySizeFieldMouseClicked
 
     private void genAnnealBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_genAnnealBoxActionPerformed
-        Params.GENERATIONAL_ANNEALING = genAnnealBox.isSelected();
+        // read by annealingOn() when the next generation starts
     }//GEN-LAST:event_genAnnealBoxActionPerformed
 
     public boolean windowedOn() {
         return windowGenBox.isSelected();
     }
 
+    public boolean annealingOn() {
+        return genAnnealBox.isSelected();
+    }
+
     public int getNumGenCycles() {
         return Integer.parseInt(numGenCyclesField.getText());
     }
@@ -489,6 +593,23 @@ public class GenerationPanel extends javax.swing.JPanel {
         return Integer.parseInt(numOutputsField.getText());
     }
 
+    /*
+     * The generation cycles between two outputs drawn from one chain, or 0 to
+     * give every output its own chain (only for non-windowed generation)
+     */
+    public int getThinning() {
+        return Integer.parseInt(thinningField.getText());
+    }
+
+    /*
+     * The generation cycles of every window of a windowed generation after
+     * the first (the generation cycles, unless fewer are set)
+     */
+    public int getWindowCycles() {
+        int windowCycles = Integer.parseInt(windowCyclesField.getText());
+        return windowCycles == 0 ? getNumGenCycles() : windowCycles;
+    }
+
     public int getGenStepSize() {
         return Integer.parseInt(stepSizeField.getText());
     }
@@ -510,7 +631,9 @@ public class GenerationPanel extends javax.swing.JPanel {
         windowGenBox.setSelected(brain.getUseWindowing());
         newMelodySizeField.setEnabled(windowGenBox.isSelected());
         stepSizeField.setEnabled(windowGenBox.isSelected());
+        thinningField.setEnabled(!windowGenBox.isSelected());
         stepSizeField.setText(brain.getStepSize()+"");
+        genAnnealBox.setSelected(brain.getConfig().isGenerationalAnnealing());
     }
 
 
@@ -519,6 +642,7 @@ public class GenerationPanel extends javax.swing.JPanel {
     private javax.swing.JCheckBox genAnnealBox;
     private javax.swing.JButton generateButton;
     private javax.swing.JLabel jLabel1;
+    private javax.swing.JLabel jLabel10;
     private javax.swing.JLabel jLabel2;
     private javax.swing.JLabel jLabel3;
     private javax.swing.JLabel jLabel4;
@@ -526,6 +650,7 @@ public class GenerationPanel extends javax.swing.JPanel {
     private javax.swing.JLabel jLabel6;
     private javax.swing.JLabel jLabel7;
     private javax.swing.JLabel jLabel8;
+    private javax.swing.JLabel jLabel9;
     private javax.swing.JPanel jPanel1;
     private javax.swing.JPanel jPanel2;
     private javax.swing.JPanel jPanel3;
@@ -536,6 +661,8 @@ public class GenerationPanel extends javax.swing.JPanel {
     private javax.swing.JTextField outDirectoryField;
     private javax.swing.JTextField outFilenameField;
     private javax.swing.JTextField stepSizeField;
+    private javax.swing.JTextField thinningField;
+    private javax.swing.JTextField windowCyclesField;
     private javax.swing.JCheckBox windowGenBox;
     private javax.swing.JRadioButton writeLSButton;
     private javax.swing.JRadioButton writeLickButton;
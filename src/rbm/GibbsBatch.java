@@ -0,0 +1,214 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package rbm;
+
+/**
+ * class GibbsBatch
+ *
+ * Advances several GibbsChains on the same LayeredRBM together.  The states
+ * of the chains form one matrix per layer (a row per chain), so every
+ * weighted sum of the batch is a matrix product in which each weight row is
+ * loaded once for all the chains (see RBM.computeHiddenWeightedSumsBatch).
+ * Sampling is still done chain by chain, with the clamps and the Sampler of
+ * each chain, so every chain ends in the same state as if it had been run
+ * on its own.  A batch never shows a Visualizer.
+ */
+public class GibbsBatch {
+
+    private final LayeredRBM model;
+    private final RBM[] layers;
+    private final GibbsChain[] chains;
+
+    // states[k][b] is layer k (as in GibbsChain) of chain b
+    private final LayerState[][] states;
+
+    /**
+     *
+     * @param chains - the chains to advance together, all on the same
+     * LayeredRBM
+     */
+    public GibbsBatch(GibbsChain[] chains) {
+        if (chains.length == 0) {
+            throw new IllegalArgumentException("A batch needs at least one chain");
+        }
+        this.model = chains[0].getModel();
+        this.layers = model.layers;
+        this.chains = chains;
+
+        states = new LayerState[layers.length + 1][chains.length];
+        for (int b = 0; b < chains.length; b++) {
+            if (chains[b].getModel() != model) {
+                throw new IllegalArgumentException("Every chain of a batch must sample from the same brain");
+            }
+            for (int k = 0; k <= layers.length; k++) {
+                states[k][b] = chains[b].getState(k);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param seeds - the data with which to start each chain (modified in
+     * place), one per chain
+     * @param numCycles - the number of generation cycles before the data is returned.
+     * @return - the seeds, now containing the generated data
+     */
+    public DataVessel[] generate(DataVessel[] seeds, int numCycles) {
+        if (seeds.length != chains.length) {
+            throw new IllegalArgumentException(seeds.length + " seeds for " + chains.length + " chains");
+        }
+        for (int b = 0; b < chains.length; b++) {
+            chains[b].setInput(seeds[b].getData());
+        }
+
+        final RbmConfig config = model.getConfig(); // the same settings throughout
+        InputRBM input = (InputRBM) layers[0];
+        for (GibbsChain chain : chains) {
+            chain.startRun();
+        }
+
+        // the chains still running; a chain whose ConvergenceRule lets it stop
+        // drops out, and its final cycle waits for the others
+        int[] active = new int[chains.length];
+        for (int b = 0; b < chains.length; b++) {
+            active[b] = b;
+        }
+        int numActive = chains.length;
+        boolean[] converged = new boolean[chains.length];
+
+        for (int cycle = 0; cycle < numCycles && numActive > 0; cycle++) {
+            for (int k = 0; k < numActive; k++) {
+                chains[active[k]].anneal(config, cycle, numCycles);
+            }
+            for (int i = 0; i < layers.length; ++i) {
+                activateHidden(i, active, numActive);
+            }
+            for (int i = layers.length; i > 0; --i) {
+                activateVisible(i - 1, active, numActive);
+            }
+
+            int stillActive = 0;
+            for (int k = 0; k < numActive; k++) {
+                if (chains[active[k]].endCycle(config.getConvergenceRule())) {
+                    converged[active[k]] = true;
+                } else {
+                    active[stillActive++] = active[k];
+                }
+            }
+            numActive = stillActive;
+        }
+
+        //final generation cycle for every chain, with the special visible
+        //node activation
+        for (int b = 0; b < chains.length; b++) {
+            active[b] = b;
+        }
+        numActive = chains.length;
+        for (int i = 0; i < layers.length; ++i) {
+            activateHidden(i, active, numActive);
+        }
+        for (int i = layers.length; i > 1; --i) {
+            activateVisible(i - 1, active, numActive);
+        }
+
+        if (config.getFinalActivationMode() == Params.MAX_PROB
+                || config.getFinalActivationMode() == Params.PROB_DIST) {
+            //the group activations also need the sums of the clamped nodes in groups
+            float[][] sums = input.computeVisibleWeightedSumsBatch(states[0], states[1]);
+            for (int b = 0; b < chains.length; b++) {
+                if (config.getFinalActivationMode() == Params.MAX_PROB) {
+                    input.sampleVisibleMaxProb(sums[b], states[0][b], chains[b].getSampler());
+                } else {
+                    input.sampleVisibleProbDist(sums[b], states[0][b], chains[b].getSampler());
+                }
+            }
+        } else {
+            activateVisible(0, active, numActive);
+        }
+        for (int b = 0; b < chains.length; b++) {
+            chains[b].writeOutput(seeds[b]);
+            chains[b].finishRun(converged[b]);
+        }
+        return seeds;
+    }
+
+    // samples the hidden layer of RBM i for the active chains.  Chains whose
+    // sums cannot be updated from a few flipped nodes get them recomputed together.
+    private void activateHidden(int i, int[] active, int numActive) {
+        int[] stale = new int[numActive];
+        int numStale = 0;
+        for (int k = 0; k < numActive; k++) {
+            if (!chains[active[k]].updateHiddenSums(i)) {
+                stale[numStale++] = active[k];
+            }
+        }
+        if (numStale > 0) {
+            LayerState[] visible = new LayerState[numStale];
+            float[][] clampedSums = new float[numStale][];
+            for (int k = 0; k < numStale; k++) {
+                visible[k] = states[i][stale[k]];
+                clampedSums[k] = chains[stale[k]].getClampedSums();
+            }
+            float[][] sums = (i == 0)
+                    ? ((InputRBM) layers[0]).computeHiddenWeightedSumsBatch(visible, clampedSums)
+                    : layers[i].computeHiddenWeightedSumsBatch(visible);
+            for (int k = 0; k < numStale; k++) {
+                chains[stale[k]].resetHiddenSums(i, sums[k]);
+            }
+        }
+        for (int k = 0; k < numActive; k++) {
+            int b = active[k];
+            layers[i].sampleHidden(chains[b].getHiddenSums(i), states[i + 1][b],
+                    chains[b].getAnnealingRate(i), chains[b].getSampler());
+        }
+    }
+
+    // samples the visible layer of RBM i for the active chains (only the
+    // free nodes of the input layer), in the same way
+    private void activateVisible(int i, int[] active, int numActive) {
+        int[] stale = new int[numActive];
+        int numStale = 0;
+        for (int k = 0; k < numActive; k++) {
+            if (!chains[active[k]].updateVisibleSums(i)) {
+                stale[numStale++] = active[k];
+            }
+        }
+        if (numStale > 0) {
+            LayerState[] visible = new LayerState[numStale];
+            LayerState[] hidden = new LayerState[numStale];
+            for (int k = 0; k < numStale; k++) {
+                visible[k] = states[i][stale[k]];
+                hidden[k] = states[i + 1][stale[k]];
+            }
+            float[][] sums = (i == 0)
+                    ? ((InputRBM) layers[0]).computeFreeVisibleWeightedSumsBatch(visible, hidden)
+                    : layers[i].computeVisibleWeightedSumsBatch(visible, hidden);
+            for (int k = 0; k < numStale; k++) {
+                chains[stale[k]].resetVisibleSums(i, sums[k]);
+            }
+        }
+        for (int k = 0; k < numActive; k++) {
+            int b = active[k];
+            layers[i].sampleVisible(chains[b].getVisibleSums(i), states[i][b], chains[b].getSampler());
+        }
+    }
+} // end of class GibbsBatch
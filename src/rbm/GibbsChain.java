@@ -0,0 +1,526 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package rbm;
+
+/**
+ * class GibbsChain
+ *
+ * The state of one generation run on a LayeredRBM: the node states of every
+ * layer, the clamps of the input layer, the annealing rates and the source of
+ * randomness.  The LayeredRBM only supplies the weights, which a chain never
+ * writes, so any number of chains may sample from one loaded brain at once
+ * (each on its own thread) without locking, as long as the brain is not being
+ * trained at the same time.
+ */
+public class GibbsChain {
+
+    private final LayeredRBM model;
+    private final RBM[] layers;
+
+    // states[0] is the input layer, states[i + 1] the hidden layer of layers[i]
+    private final LayerState[] states;
+    private final float[] annealingRates;
+    private final Sampler rand;
+
+    // the weighted sums kept through a run (see startRun)
+    private float[] clampedSums;
+    private PreActivations[] hiddenSums;
+    private PreActivations[] visibleSums;
+
+    // the convergence signal of a run: the input states after the last
+    // cycle, the cycles run and the settled cycles in a row (see endCycle)
+    private LayerState previousInput;
+    private int cyclesRun;
+    private int settledCycles;
+    private long runStart;
+
+    private final GenerationMetrics metrics = new GenerationMetrics();
+
+    /**
+     *
+     * @param model - the brain to sample from
+     *
+     * Constructor for a chain drawing from the sampler of the calling thread
+     */
+    public GibbsChain(LayeredRBM model) {
+        this(model, Sampler.forThread());
+    }
+
+    /**
+     *
+     * @param model - the brain to sample from
+     * @param rand - the source of randomness of this chain (not to be shared
+     * with another thread)
+     *
+     * Constructor for the GibbsChain class.  Every node starts off and
+     * unclamped, except the bias nodes, which are on (and clamped in the
+     * input layer).
+     */
+    public GibbsChain(LayeredRBM model, Sampler rand) {
+        this.model = model;
+        this.layers = model.layers;
+        this.rand = rand;
+
+        states = new LayerState[layers.length + 1];
+        states[0] = new LayerState(layers[0].getVisible().size());
+        for (int i = 0; i < layers.length; i++) {
+            states[i + 1] = new LayerState(layers[i].getHidden().size());
+        }
+        for (LayerState state : states) {
+            state.set(state.size() - 1, 1);
+        }
+        states[0].setClamped(states[0].size() - 1, true);
+
+        annealingRates = new float[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            annealingRates[i] = layers[i].annealingRate;
+        }
+    }
+
+    /**
+     *
+     * @return - the brain this chain samples from
+     */
+    public LayeredRBM getModel() {
+        return model;
+    }
+
+    /**
+     *
+     * @return - the cycles used by every run of this chain so far (not to be
+     * changed)
+     */
+    public GenerationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     *
+     * @return - the states of the input layer of this chain
+     */
+    public LayerState getVisible() {
+        return states[0];
+    }
+
+    /**
+     *
+     * @param input - the states to set the input layer to (without the bias)
+     *
+     * Sets every input node, clamped or not
+     */
+    public void setInput(int[] input) {
+        for (int i = 0; i < input.length; i++) {
+            states[0].set(i, input[i]);
+        }
+    }
+
+    /**
+     *
+     * @param startIndex - the index to start clamping at, inclusive
+     * @param endIndex - the index to stop clamping at, exclusive
+     *
+     * Clamps input nodes [startIndex, endIndex) of this chain only
+     */
+    public void clamp(int startIndex, int endIndex) {
+        int bias = states[0].size() - 1;
+        for (int i = Math.max(startIndex, 0); i < Math.min(endIndex, bias); i++) {
+            states[0].setClamped(i, true);
+        }
+    }
+
+    /**
+     *
+     * @param startIndex - the index to start unclamping at, inclusive
+     * @param endIndex - the index to stop unclamping at, exclusive
+     *
+     * Releases the clamps of input nodes [startIndex, endIndex) of this chain
+     * (the bias stays clamped)
+     */
+    public void unclamp(int startIndex, int endIndex) {
+        int bias = states[0].size() - 1;
+        for (int i = Math.max(startIndex, 0); i < Math.min(endIndex, bias); i++) {
+            states[0].setClamped(i, false);
+        }
+    }
+
+    /**
+     *
+     * @param clamps - a state whose clamps this chain takes over
+     *
+     * Used to keep the clamps set on the brain itself (through
+     * LayeredRBM.clamp) for the generations that do not use their own chain.
+     */
+    public void copyClampsFrom(LayerState clamps) {
+        states[0].copyClampsFrom(clamps);
+    }
+
+    /**
+     *
+     * @param seed - the data with which to start the generation (modified
+     * in place)
+     * @param numCycles - the number of generation cycles before the data is returned.
+     * @param publisher - where to send snapshots of the input layer, or null
+     * to generate headless
+     * @return - the seed, now containing the generated data
+     *
+     * Same as setInput(seed.getData()) followed by run(seed, numCycles,
+     * publisher)
+     */
+    public DataVessel generate(DataVessel seed, int numCycles, SnapshotPublisher publisher) {
+        setInput(seed.getData());
+        return run(seed, numCycles, publisher);
+    }
+
+    /**
+     *
+     * @param seed - where to write the generated data (only its shape is
+     * read; the chain starts from the current states of its input layer, from
+     * which the first cycle samples every hidden layer anew)
+     * @param numCycles - the number of generation cycles before the data is returned.
+     * @param publisher - where to send snapshots of the input layer, or null
+     * to generate headless
+     * @return - the seed, now containing the generated data
+     *
+     * Snapshots are only built when the publisher says one is due, and the
+     * sampler never waits for them to be shown.  With a ConvergenceRule in the
+     * config of the model, the run may stop before numCycles cycles; the
+     * cycles it used are added to getMetrics().
+     */
+    public DataVessel run(DataVessel seed, int numCycles, SnapshotPublisher publisher) {
+        final RbmConfig config = model.getConfig(); // the same settings throughout
+        InputRBM input = (InputRBM) layers[0];
+        startRun();
+
+        boolean converged = false;
+        for (int cycle = 0; cycle < numCycles && !converged; cycle++)
+        {
+
+            anneal(config, cycle, numCycles);
+            generationCycle(publisher, config, cycle, seed);
+            converged = endCycle(config.getConvergenceRule());
+        }
+
+        //final generation cycle
+        //  * don't bother annealing
+        //  * perform special visible node activation if wanted
+        for (int i = 0; i < layers.length; ++i) {
+            activateHidden(i);
+        }
+
+        for (int i = layers.length; i > 1; --i) {
+            activateVisible(i - 1);
+        }
+
+        //final visible node activation:
+        switch (config.getFinalActivationMode()) {
+            case Params.MAX_PROB:
+                input.activateVisibleMaxProb(states[0], states[1], rand);
+                break;
+            case Params.PROB_DIST:
+                input.activateVisibleProbDist(states[0], states[1], rand);
+                break;
+            default:
+                activateVisible(0);
+        }
+        // always show the final state, after the cycles the run really used
+        if (publisher != null) {
+            publishInputs(publisher, config, cyclesRun, states[0], seed.getNumRows(), seed.getNumCols(), true);
+        }
+
+        writeOutput(seed);
+        finishRun(converged);
+        return seed;
+    }
+
+    /**
+     *
+     * @param seed - the data with which to start the chain (only read)
+     * @param numSamples - the number of outputs to draw
+     * @param burnInCycles - the number of generation cycles before the first
+     * output is drawn
+     * @param thinning - the number of generation cycles between two outputs
+     * @param publisher - where to send snapshots of the input layer, or null
+     * to generate headless
+     * @return - numSamples copies of seed, holding the generated data
+     *
+     * Draws several outputs from one chain, paying for the burn-in only once.
+     * Each output is finalized as run() finalizes its output (a fresh pass up
+     * through the hidden layers and down again, ending in the final
+     * activation mode), but on copies of the states, so the chain itself goes
+     * on sampling undisturbed.  With no burn-in the first output is a
+     * one-step sample of the seed.  Outputs
+     * drawn close together are alike; the thinning sets how far apart they
+     * are.  A ConvergenceRule in the config of the model may only shorten
+     * the burn-in.  The whole draw is one run of getMetrics().
+     */
+    public DataVessel[] sample(DataVessel seed, int numSamples, int burnInCycles,
+            int thinning, SnapshotPublisher publisher) {
+        final RbmConfig config = model.getConfig(); // the same settings throughout
+        final int numCycles = burnInCycles + Math.max(numSamples - 1, 0) * thinning;
+        DataVessel[] samples = new DataVessel[numSamples];
+        setInput(seed.getData());
+        startRun();
+
+        boolean converged = false;
+        int cycle = 0;
+        for (; cycle < burnInCycles && !converged; cycle++) {
+            anneal(config, cycle, numCycles);
+            generationCycle(publisher, config, cycle, seed);
+            converged = endCycle(config.getConvergenceRule());
+        }
+
+        LayerState[] finalStates = new LayerState[states.length];
+        for (int i = 0; i < states.length; i++) {
+            finalStates[i] = new LayerState(states[i]);
+        }
+        LayerState finalInput = finalStates[0];
+        for (int n = 0; n < numSamples; n++) {
+            for (int k = 0; n > 0 && k < thinning; k++, cycle++) {
+                anneal(config, cycle, numCycles);
+                generationCycle(publisher, config, cycle, seed);
+                endCycle(null);
+            }
+            finalPass(config, finalStates);
+            samples[n] = new DataVessel(seed);
+            writeOutput(finalInput, samples[n]);
+        }
+        if (publisher != null) {
+            publishInputs(publisher, config, cycle, finalInput, seed.getNumRows(), seed.getNumCols(), true);
+        }
+
+        finishRun(converged);
+        return samples;
+    }
+
+    // propagates the inputs up through the hidden layers and back down again
+    // (one generation cycle), publishing the input layer if a snapshot is due
+    private void generationCycle(SnapshotPublisher publisher, RbmConfig config, int cycle, DataVessel seed) {
+        for (int i = 0; i < layers.length; ++i) {
+            activateHidden(i);
+        }
+        for (int i = layers.length; i > 0; --i) {
+            activateVisible(i - 1);
+        }
+        if (publisher != null && publisher.isDue()) {
+            publishInputs(publisher, config, cycle, states[0], seed.getNumRows(), seed.getNumCols(), false);
+        }
+    }
+
+    // the final generation cycle of run() on copies of the states of the
+    // chain: copies them into finalStates, activates every hidden layer from
+    // the one below, then every visible layer from the one above, the input
+    // layer by the final activation mode.  The sums are computed in full,
+    // since the PreActivations follow the chain.
+    private void finalPass(RbmConfig config, LayerState[] finalStates) {
+        for (int i = 0; i < states.length; i++) {
+            finalStates[i].copyFrom(states[i]);
+        }
+        InputRBM input = (InputRBM) layers[0];
+        input.activateHidden(finalStates[0], finalStates[1], clampedSums, annealingRates[0], rand);
+        for (int i = 1; i < layers.length; ++i) {
+            layers[i].activateHidden(finalStates[i], finalStates[i + 1], annealingRates[i], rand);
+        }
+        for (int i = layers.length; i > 1; --i) {
+            layers[i - 1].activateVisible(finalStates[i - 1], finalStates[i], rand);
+        }
+        switch (config.getFinalActivationMode()) {
+            case Params.MAX_PROB:
+                input.activateVisibleMaxProb(finalStates[0], finalStates[1], rand);
+                break;
+            case Params.PROB_DIST:
+                input.activateVisibleProbDist(finalStates[0], finalStates[1], rand);
+                break;
+            default:
+                input.activateVisible(finalStates[0], finalStates[1], rand);
+        }
+    }
+
+    // samples the hidden layer of RBM i
+    private void activateHidden(int i) {
+        if (!updateHiddenSums(i)) {
+            resetHiddenSums(i, (i == 0)
+                    ? ((InputRBM) layers[0]).computeHiddenWeightedSums(states[0], clampedSums)
+                    : layers[i].computeHiddenWeightedSums(states[i]));
+        }
+        layers[i].sampleHidden(hiddenSums[i].getSums(), states[i + 1], annealingRates[i], rand);
+    }
+
+    // samples the visible layer of RBM i (only the free nodes of the input layer)
+    private void activateVisible(int i) {
+        if (!updateVisibleSums(i)) {
+            resetVisibleSums(i, (i == 0)
+                    ? ((InputRBM) layers[0]).computeFreeVisibleWeightedSums(states[0], states[1])
+                    : layers[i].computeVisibleWeightedSums(states[i], states[i + 1]));
+        }
+        layers[i].sampleVisible(visibleSums[i].getSums(), states[i], rand);
+    }
+
+    /*
+     * Prepares the weighted sums kept through a run: the part of the first
+     * hidden layer's sums from the clamped nodes, which keep their states
+     * throughout, and the PreActivations of every layer (empty until the
+     * first half-step computes them in full)
+     */
+    void startRun() {
+        runStart = System.nanoTime();
+        cyclesRun = 0;
+        settledCycles = 0;
+        if (previousInput == null) {
+            previousInput = new LayerState(states[0]);
+        } else {
+            previousInput.copyFrom(states[0]);
+        }
+        clampedSums = ((InputRBM) layers[0]).computeClampedHiddenSums(states[0]);
+        hiddenSums = new PreActivations[layers.length];
+        visibleSums = new PreActivations[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            hiddenSums[i] = new PreActivations(layers[i].getWeights(), true);
+            // only the free input nodes are sampled, so only their sums are kept
+            visibleSums[i] = new PreActivations(layers[i].getWeights(), false, (i == 0) ? states[0] : null);
+        }
+    }
+
+    /*
+     * Counts a finished cycle and returns whether the run may stop by rule
+     * (never if rule is null, in which case the input states are not compared)
+     */
+    boolean endCycle(ConvergenceRule rule) {
+        cyclesRun++;
+        if (rule == null) {
+            return false;
+        }
+        if (rule.isSettled(states[0].distance(previousInput))) {
+            settledCycles++;
+        } else {
+            settledCycles = 0;
+        }
+        previousInput.copyFrom(states[0]);
+        return rule.isConverged(cyclesRun, settledCycles);
+    }
+
+    // adds the finished run to the metrics
+    void finishRun(boolean converged) {
+        metrics.addRun(cyclesRun, converged, System.nanoTime() - runStart);
+    }
+
+    // brings the hidden sums of RBM i up to date from the flipped visible
+    // nodes, or returns false if they must be recomputed (see PreActivations)
+    boolean updateHiddenSums(int i) {
+        return hiddenSums[i].update(states[i]);
+    }
+
+    // the same for the visible sums of RBM i
+    boolean updateVisibleSums(int i) {
+        return visibleSums[i].update(states[i + 1]);
+    }
+
+    void resetHiddenSums(int i, float[] sums) {
+        hiddenSums[i].reset(sums, states[i]);
+    }
+
+    void resetVisibleSums(int i, float[] sums) {
+        visibleSums[i].reset(sums, states[i + 1]);
+    }
+
+    float[] getHiddenSums(int i) {
+        return hiddenSums[i].getSums();
+    }
+
+    float[] getVisibleSums(int i) {
+        return visibleSums[i].getSums();
+    }
+
+    float[] getClampedSums() {
+        return clampedSums;
+    }
+
+    // sets the annealing rates for a generation cycle (only if generational
+    // annealing is on)
+    void anneal(RbmConfig config, int cycle, int numCycles) {
+        if (config.isGenerationalAnnealing()) {
+            //NOTE: annealing rate lowers from 1 to MIN_ANNEALING_RATE over generation
+            java.util.Arrays.fill(annealingRates,
+                    (((Params.MIN_ANNEALING_RATE-1)/numCycles)*cycle)+1);
+        }
+    }
+
+    // the states of a layer: 0 is the input layer, i + 1 the hidden layer of
+    // RBM i
+    LayerState getState(int index) {
+        return states[index];
+    }
+
+    float getAnnealingRate(int layer) {
+        return annealingRates[layer];
+    }
+
+    Sampler getSampler() {
+        return rand;
+    }
+
+    // copies the input layer into the melody and chords of seed
+    void writeOutput(DataVessel seed) {
+        writeOutput(states[0], seed);
+    }
+
+    private static void writeOutput(LayerState input, DataVessel seed) {
+        input.copyTo(0, seed.getMelody(), 0, seed.getMelodySize());
+        if (seed.getChords() != null) {
+            input.copyTo(seed.getMelodySize(), seed.getChords(), 0, seed.getChordsSize());
+        }
+    }
+
+    /**
+     * publishInputs
+     * @param publisher - where to send the snapshot
+     * @param config - the settings of the generation
+     * @param cycle - the current generation cycle
+     * @param input - the input layer to show (the chain's own, or a copy of
+     * it holding a finalized output)
+     * @param last - whether this is the last snapshot of the run, which must
+     * not be dropped
+     *
+     * Takes a snapshot of the input layer (states or probabilities, by the
+     * visual display mode) and publishes it
+     */
+    private void publishInputs(SnapshotPublisher publisher, RbmConfig config, int cycle,
+            LayerState input, int rows, int cols, boolean last) {
+        //display stuff
+        int mode = config.getVisualDisplayMode();
+        float[][] snapshot;
+        if (mode == Params.NONE) {
+            return;
+        } else if (mode == Params.STATE) {
+            snapshot = Visualizer.convertArray(input, rows, cols);
+        } else if (mode == Params.HINTON) {
+            snapshot = ((InputRBM) layers[0]).getHintonDiagram(states[1], rows, cols);
+        } else {
+            System.err.println("Display parameters set incorrectly");
+            return;
+        }
+        if (last) {
+            publisher.publishFinal(cycle, snapshot);
+        } else {
+            publisher.publish(cycle, snapshot);
+        }
+    }
+} // end of class GibbsChain
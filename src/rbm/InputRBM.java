@@ -23,8 +23,9 @@
 package rbm;
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.Random;
 import java.util.ArrayList;
 import encoding.Group;
 
@@ -38,7 +39,6 @@ public class InputRBM extends RBM  implements Serializable{
 
     static final long serialVersionUID = -8694907460910482444L;
 
-    Node[] visibleNodes;
     ArrayList<Group> groups;
     int[] ungrouped;
 
@@ -47,23 +47,45 @@ public class InputRBM extends RBM  implements Serializable{
       */
     public InputRBM(int numVisibleNodes, int numHiddenNodes){
         super(numVisibleNodes, numHiddenNodes);
-        super.visibleNodes = null;   // we use our own, any use of the other
-                                     // will be an error
-
-        this.visibleNodes = new Node[numVisibleNodes + 1];
-        for(int i = 0; i < visibleNodes.length; i++){
-            visibleNodes[i] = new Node(0, false);
-        }
 
         // bias nodes are always 1
-        visibleNodes[ visibleNodes.length - 1 ].setValue(1);
-        visibleNodes[ visibleNodes.length - 1 ].clamped = true;
+        visibleNodes.setClamped(visibleNodes.size() - 1, true);
 
         groups = new ArrayList<Group>();
         computeUngroupedFromGroups();
 
     } // end of constructor
 
+    /*
+     * Constructor for an InputRBM read from a model file (see class ModelFile)
+     */
+    InputRBM(LayerState visibleNodes, LayerState hiddenNodes, WeightMatrix weightMatrix,
+            ArrayList<Group> groups, int[] ungrouped) {
+        super(visibleNodes, hiddenNodes, weightMatrix);
+        this.groups = groups;
+        this.ungrouped = ungrouped;
+    }
+
+    /*
+     * Brains saved before the visible states moved into the LayerState of
+     * the RBM carry them here as an array of Nodes, which is converted.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        groups = (ArrayList<Group>) fields.get("groups", null);
+        ungrouped = (int[]) fields.get("ungrouped", null);
+
+        if (fields.getObjectStreamClass().getField("visibleNodes") != null) {
+            Node[] nodes = (Node[]) fields.get("visibleNodes", null);
+            visibleNodes = new LayerState(nodes.length);
+            for (int i = 0; i < nodes.length; i++) {
+                visibleNodes.set(i, nodes[i].value);
+                visibleNodes.setClamped(i, nodes[i].clamped);
+            }
+        }
+    }
+
     /**
      *
      * @param startIndex - the index to start clamping at, inclusive
@@ -75,10 +97,10 @@ public class InputRBM extends RBM  implements Serializable{
      */
     public void clamp(int startIndex, int endIndex){
         for(int i = startIndex; i < endIndex; i++){
-            if(i >= visibleNodes.length || i < 0)
+            if(i >= visibleNodes.size() || i < 0)
                 continue;
 
-            visibleNodes[i].clamped = true;
+            visibleNodes.setClamped(i, true);
         }
     } // end of method clamp
 
@@ -90,10 +112,10 @@ public class InputRBM extends RBM  implements Serializable{
      * Sets the clamp for a single index
      */
     public void clamp(int index){
-        if(index >= visibleNodes.length)
+        if(index >= visibleNodes.size())
             return;
 
-        visibleNodes[index].clamped = true;
+        visibleNodes.setClamped(index, true);
     } // end of method clamp
 
     /**
@@ -105,10 +127,10 @@ public class InputRBM extends RBM  implements Serializable{
      */
     public void unclamp(int startIndex, int endIndex){
         for(int i = startIndex; i < endIndex; i++){
-            if(i >= visibleNodes.length || i < 0)
+            if(i >= visibleNodes.size() || i < 0)
                 continue;
 
-            visibleNodes[i].clamped = false;
+            visibleNodes.setClamped(i, false);
         }
     } // end of method clamp
 
@@ -120,10 +142,10 @@ public class InputRBM extends RBM  implements Serializable{
      * Releases the clamp for a single index
      */
     public void unclamp(int index){
-        if(index >= visibleNodes.length)
+        if(index >= visibleNodes.size())
             return;
 
-        visibleNodes[index].clamped = false;
+        visibleNodes.setClamped(index, false);
     } // end of method clamp
 
 
@@ -132,9 +154,7 @@ public class InputRBM extends RBM  implements Serializable{
      * Unclamps all nodes in the visible layer.
      */
     public void unclampAll(){
-        for(Node n: this.visibleNodes){
-            n.clamped = false;
-        }
+        visibleNodes.unclampAll();
     }
 
     /**
@@ -165,45 +185,99 @@ public class InputRBM extends RBM  implements Serializable{
      * the weighted sum accummulated from the hidden layer.
      */
     @Override
-    public void activateVisible()
+    protected void sampleVisible(float[] sums, LayerState visible, Sampler rand)
     {
-        Random rand = new Random();
-        for (int i=0; i<visibleNodes.length; ++i){
-            if(visibleNodes[i].clamped == false){
-                //computed weighted sum
-                float sum = computeVisibleWeightedSum(i);
-
-                //(call logsig function with annealing rate set to 1)
-                if (rand.nextDouble() < logsig(sum, 1))
-                    visibleNodes[i].setValue(1);
-                else
-                    visibleNodes[i].setValue(0);
-            }
+        float[] uniforms = rand.uniforms(visible.size());
+        for (int i=visible.nextUnclamped(0); i>=0; i=visible.nextUnclamped(i+1)){
+            //(call logsig function with annealing rate set to 1)
+            if (uniforms[i] < logsig(sums[i], 1))
+                visible.set(i, 1);
+            else
+                visible.set(i, 0);
         }
     }
 
     /**
-     * Probabilistically activates each node in the hidden layer based upon
-     * the weighted sum accummulated from the visible layer.
+     * Activates the unclamped visible nodes, computing the weighted sums of
+     * those nodes only
      */
     @Override
-    public void activateHidden()
+    public void activateVisible(LayerState visible, LayerState hidden, Sampler rand)
     {
-        Random rand = new Random();
-        for (int i=0; i<hiddenNodes.length-1; ++i)
-        {
-            //compute weighted sum
-            float sum = 0;
-            for (int j=0; j<visibleNodes.length; ++j)
-                if (visibleNodes[j].value == 1)
-                    sum += weights[j][i];
+        sampleVisible(computeFreeVisibleWeightedSums(visible, hidden), visible, rand);
+    }
 
-            //probabalistically activate node based on sigmoid computation
-            if (rand.nextDouble() < logsig(sum, annealingRate))
-                hiddenNodes[i] = 1;
-            else
-                hiddenNodes[i] = 0;
+    /*
+     *  Method: computeClampedHiddenSums
+     *
+     *  The part of the hidden weighted sums that comes from the clamped
+     *  visible nodes that are on (the bias among them).  As long as the clamps
+     *  and the clamped states stay the same, as they do for one generation,
+     *  it is an extra hidden bias: each cycle only has to add the rows of the
+     *  free nodes to it (see activateHidden(visible, hidden, clampedSums, ...)).
+     */
+    public float[] computeClampedHiddenSums(final LayerState visible)
+    {
+        final float[] sums = new float[weightMatrix.getNumCols()];
+        runKernel(sums.length, visible.cardinality(), new Parallel.RangeKernel() {
+            public void compute(int start, int end) {
+                weightMatrix.addRowsTo(visible, true, sums, start, end);
+            }
+        });
+        return sums;
+    }
+
+    /**
+     *
+     * @param visible - the visible states
+     * @param hidden - the hidden states to activate
+     * @param clampedSums - computeClampedHiddenSums(visible), from the current
+     * clamps and clamped states
+     * @param annealingRate - the annealing rate of the hidden layer
+     * @param rand - the source of randomness
+     *
+     * activateHidden with the rows of the clamped nodes already summed
+     */
+    public void activateHidden(LayerState visible, LayerState hidden, float[] clampedSums,
+                               float annealingRate, Sampler rand)
+    {
+        sampleHidden(computeHiddenWeightedSums(visible, clampedSums), hidden, annealingRate, rand);
+    }
+
+    // the hidden weighted sums: the clamped sums plus the rows of the free
+    // visible nodes that are on
+    protected float[] computeHiddenWeightedSums(final LayerState visible, float[] clampedSums)
+    {
+        final float[] sums = clampedSums.clone();
+        runKernel(sums.length, visible.cardinality(), new Parallel.RangeKernel() {
+            public void compute(int start, int end) {
+                weightMatrix.addRowsTo(visible, false, sums, start, end);
+            }
+        });
+        return sums;
+    }
+
+    // The same for a batch of chains, with the clamped sums of each chain
+    protected float[][] computeHiddenWeightedSumsBatch(final LayerState[] visible, float[][] clampedSums)
+    {
+        final float[][] sums = new float[visible.length][];
+        int work = 0;
+        for (int b=0; b<visible.length; ++b) {
+            sums[b] = clampedSums[b].clone();
+            work += visible[b].cardinality();
         }
+        runKernel(weightMatrix.getNumCols(), work, new Parallel.RangeKernel() {
+            public void compute(int start, int end) {
+                for (int i = 0; i < weightMatrix.getNumRows(); ++i) {
+                    for (int b = 0; b < visible.length; ++b) {
+                        if (visible[b].isOn(i) && !visible[b].isClamped(i)) {
+                            weightMatrix.addRowTo(i, sums[b], start, end);
+                        }
+                    }
+                }
+            }
+        });
+        return sums;
     }
 
     /**
@@ -211,6 +285,30 @@ public class InputRBM extends RBM  implements Serializable{
      * probability of activation. All other bits in the group are set to 0.
      */
     public void activateVisibleMaxProb() {
+        activateVisibleMaxProb(visibleNodes, hiddenNodes, Sampler.forThread());
+    }
+
+    /**
+     *
+     * @param visible - the visible states to activate, clamps included
+     * @param hidden - the hidden states to activate them from
+     * @param rand - the source of randomness for the ungrouped nodes
+     *
+     * activateVisibleMaxProb on states that belong to the caller
+     */
+    public void activateVisibleMaxProb(LayerState visible, LayerState hidden, Sampler rand) {
+        sampleVisibleMaxProb(computeVisibleWeightedSums(visible, hidden), visible, rand);
+    }
+
+    /**
+     *
+     * @param sums - the weighted sums of the visible nodes
+     * @param visible - the visible states to activate, clamps included
+     * @param rand - the source of randomness for the ungrouped nodes
+     *
+     * activateVisibleMaxProb from weighted sums that are already computed
+     */
+    protected void sampleVisibleMaxProb(float[] sums, LayerState visible, Sampler rand) {
         double prob = 0;
         double maxProb = 0;
         int bestIndex = 0;
@@ -225,18 +323,18 @@ public class InputRBM extends RBM  implements Serializable{
             // set all the nodes in the group to zero, so that later the
             // chosen one will stand out
             for (int i = group.startIndex; i < group.endIndex; i++) {
-                this.visibleNodes[i].setValue(0);
+                visible.setIfUnclamped(i, 0);
             }
 
 
             for (int i = group.startIndex; i < group.endIndex; i++) {
-                prob = logsig(computeVisibleWeightedSum(i), 1);
+                prob = logsig(sums[i], 1);
                 if (prob > maxProb) {
                     maxProb = prob;
                     bestIndex = i;
                 }
             }
-            this.visibleNodes[bestIndex].setValue(1);
+            visible.setIfUnclamped(bestIndex, 1);
             
             
             //for(int i = group.startIndex; i < group.endIndex; i++)
@@ -247,7 +345,7 @@ public class InputRBM extends RBM  implements Serializable{
         } // end of groups foreach
 
         // activate everything else separately
-        activateUngrouped();
+        activateUngrouped(sums, visible, rand);
 
     } // end of method activateVisibleMaxProb
 
@@ -258,7 +356,30 @@ public class InputRBM extends RBM  implements Serializable{
      * group are set to 0.
      */
     public void activateVisibleProbDist() {
-        Random rand = new Random();
+        activateVisibleProbDist(visibleNodes, hiddenNodes, Sampler.forThread());
+    }
+
+    /**
+     *
+     * @param visible - the visible states to activate, clamps included
+     * @param hidden - the hidden states to activate them from
+     * @param rand - the source of randomness
+     *
+     * activateVisibleProbDist on states that belong to the caller
+     */
+    public void activateVisibleProbDist(LayerState visible, LayerState hidden, Sampler rand) {
+        sampleVisibleProbDist(computeVisibleWeightedSums(visible, hidden), visible, rand);
+    }
+
+    /**
+     *
+     * @param sums - the weighted sums of the visible nodes
+     * @param visible - the visible states to activate, clamps included
+     * @param rand - the source of randomness
+     *
+     * activateVisibleProbDist from weighted sums that are already computed
+     */
+    protected void sampleVisibleProbDist(float[] sums, LayerState visible, Sampler rand) {
         float[] probs;
         int bestIndex = 0;
 
@@ -266,8 +387,7 @@ public class InputRBM extends RBM  implements Serializable{
             probs = new float[group.endIndex - group.startIndex];
 
             for (int i = 0; i < probs.length; i++) {
-                probs[i] = computeVisibleWeightedSum(i + group.startIndex);
-                probs[i] = logsig(probs[i], 1);
+                probs[i] = logsig(sums[i + group.startIndex], 1);
             }
 
             normalizeProbabilities(probs);
@@ -275,7 +395,7 @@ public class InputRBM extends RBM  implements Serializable{
             // set all the nodes in the group to zero, so that later the
             // chosen one will stand out
             for (int i = group.startIndex; i < group.endIndex; i++) {
-                this.visibleNodes[i].setValue(0);
+                visible.setIfUnclamped(i, 0);
             }
 
             // randomly choose a bit based on the probability distribution
@@ -287,11 +407,11 @@ public class InputRBM extends RBM  implements Serializable{
                 }
             }
 
-            this.visibleNodes[bestIndex].setValue(1);
+            visible.setIfUnclamped(bestIndex, 1);
 
         } // end of group foreach
 
-        activateUngrouped();
+        activateUngrouped(sums, visible, rand);
     } // end of method activateVisibleProbDist
 
     /**
@@ -324,8 +444,16 @@ public class InputRBM extends RBM  implements Serializable{
      * the ungrouped are to be processed last
      */
     public void activateUngrouped(){
-        Random rand = new Random();
+        activateUngrouped(computeVisibleWeightedSums(), visibleNodes, Sampler.forThread());
+    }
+
+    /*
+     * Activate the ungrouped nodes of the given states from already computed
+     * weighted sums
+     */
+    private void activateUngrouped(float[] sums, LayerState visible, Sampler rand){
         double prob;
+        float[] uniforms = rand.uniforms(this.ungrouped.length);
 
         for(int i = 0; i < this.ungrouped.length; i++){
             // ignore those already covered by the groups
@@ -333,9 +461,9 @@ public class InputRBM extends RBM  implements Serializable{
                 continue;
             }
             //probabalistically activate node based on sigmoid computation
-            prob = logsig(computeVisibleWeightedSum(i), 1);
-            if(rand.nextDouble() < prob){
-                this.visibleNodes[i].setValue(1);
+            prob = logsig(sums[i], 1);
+            if(uniforms[i] < prob){
+                visible.setIfUnclamped(i, 1);
             }
 
         }
@@ -346,7 +474,7 @@ public class InputRBM extends RBM  implements Serializable{
      * defined groups
      */
     public void computeUngroupedFromGroups(){
-        this.ungrouped = new int[visibleNodes.length];
+        this.ungrouped = new int[visibleNodes.size()];
 
         for(int i = 0; i < ungrouped.length; i++){
             this.ungrouped[i] = i;
@@ -362,29 +490,61 @@ public class InputRBM extends RBM  implements Serializable{
         }
     } // end of method computeUngroupedFromGroups
 
-    /**
-     * Method: accumulatePos / accumulateNeg
-     *
-     * Increments positive/negative weight change matrices by product of input
-     * node states and hidden node states
-     *
-     */
+    // Computes the weighted sums for the visible nodes in [start, end),
+    // skipping clamped nodes that no activation can change. Clamped nodes
+    // inside a group still get a sum since they compete for the group's bit.
     @Override
-    protected void accumulatePos()
+    protected void computeVisibleWeightedSums(LayerState visible, LayerState hidden, float[] sums, int start, int end)
     {
-        for (int i=0; i<visibleNodes.length; ++i)
-            if (visibleNodes[i].value == 1)
-                for (int j=0; j<hiddenNodes.length; ++j)
-                    dPos[i][j] += hiddenNodes[j];
+        computeVisibleWeightedSums(visible, hidden, sums, start, end, true);
+    }
+
+    // The weighted sums of the unclamped visible nodes only, which is all
+    // that activateVisible needs (the group activations need the others)
+    protected float[] computeFreeVisibleWeightedSums(final LayerState visible, final LayerState hidden)
+    {
+        final float[] sums = new float[weightMatrix.getNumRows()];
+        runKernel(sums.length - 1, weightMatrix.getNumCols(), new Parallel.RangeKernel() {
+            public void compute(int start, int end) {
+                computeVisibleWeightedSums(visible, hidden, sums, start, end, false);
+            }
+        });
+        return sums;
     }
 
+    private void computeVisibleWeightedSums(LayerState visible, LayerState hidden, float[] sums,
+                                            int start, int end, boolean clampedInGroups)
+    {
+        for (int i=start; i<end; ++i)
+            if (!visible.isClamped(i) || (clampedInGroups && ungrouped[i] == -1))
+                sums[i] = weightMatrix.sumRow(i, hidden);
+    }
+
+    // The same for a batch of chains, each with its own clamps
     @Override
-    protected void accumulateNeg()
+    protected void computeVisibleWeightedSumsBatch(LayerState[] visible, LayerState[] hidden, float[][] sums, int start, int end)
+    {
+        computeVisibleWeightedSumsBatch(visible, hidden, sums, start, end, true);
+    }
+
+    protected float[][] computeFreeVisibleWeightedSumsBatch(final LayerState[] visible, final LayerState[] hidden)
     {
-        for (int i=0; i<visibleNodes.length; ++i)
-            if (visibleNodes[i].value == 1)
-                for (int j=0; j<hiddenNodes.length; ++j)
-                    dNeg[i][j] += hiddenNodes[j];
+        final float[][] sums = new float[visible.length][weightMatrix.getNumRows()];
+        runKernel(weightMatrix.getNumRows() - 1, weightMatrix.getNumCols() * visible.length, new Parallel.RangeKernel() {
+            public void compute(int start, int end) {
+                computeVisibleWeightedSumsBatch(visible, hidden, sums, start, end, false);
+            }
+        });
+        return sums;
+    }
+
+    private void computeVisibleWeightedSumsBatch(LayerState[] visible, LayerState[] hidden, float[][] sums,
+                                                 int start, int end, boolean clampedInGroups)
+    {
+        for (int i=start; i<end; ++i)
+            for (int b=0; b<visible.length; ++b)
+                if (!visible[b].isClamped(i) || (clampedInGroups && ungrouped[i] == -1))
+                    sums[b][i] = weightMatrix.sumRow(i, hidden[b]);
     }
 
     /**
@@ -396,28 +556,32 @@ public class InputRBM extends RBM  implements Serializable{
 
         for (int i=0; i < newInput.length; i++)
         {
-            //modify value directly (rather than using setValue)
+            //modify value directly (rather than using setIfUnclamped)
             //in order to reset clamped nodes
-            this.visibleNodes[i].value = newInput[i];
+            this.visibleNodes.set(i, newInput[i]);
         }
-
-        computeUngroupedFromGroups();
     } // end of method setInput
 
     /**
      *
-     * @return - an int[] copy of the state of the visible layer
+     * @param input - the DataVessel to set as the visible layer
+     *
+     * Same as setInput(input.getData()), but clears the layer a word at a
+     * time and then only touches the nodes that are on in the new input.
      */
     @Override
-    public int[] getVisible(){
-        int[] visints = new int[this.visibleNodes.length];
+    public void setInput(DataVessel input){
+        int bias = visibleNodes.size() - 1;
 
-        for(int i = 0; i < this.visibleNodes.length; i++){
-            visints[i] = this.visibleNodes[i].value;
-        }
+        // turn off everything left on by the previous input (except the bias)
+        this.visibleNodes.clear();
+        this.visibleNodes.set(bias, 1);
 
-        return visints;
-    }
+        for (int i : input.getActiveIndices())
+        {
+            this.visibleNodes.set(i, 1);
+        }
+    } // end of method setInput
 
     /**
      *
@@ -428,33 +592,31 @@ public class InputRBM extends RBM  implements Serializable{
      */
     //@Override
     public float[][] getHintonDiagram(int numRows, int numCols) {
+        return getHintonDiagram(hiddenNodes, numRows, numCols);
+    }
+
+    /**
+     *
+     * @param hidden - the hidden states to compute the probabilities from
+     * @param numRows - the number of rows in the diagram
+     * @param numCols - the number of columns in the diagram
+     * @return - the same diagram as getHintonDiagram(numRows, numCols), for
+     * hidden states that belong to the caller
+     */
+    public float[][] getHintonDiagram(LayerState hidden, int numRows, int numCols) {
         float[][] probs = new float[numRows][numCols];
         for (int row = 0; row < numRows; row++) {
             for (int col = 0; col < numCols; col++) {
-                float currSum = computeVisibleWeightedSum(row * numCols + col);
+                float currSum = weightMatrix.sumRow(row * numCols + col, hidden);
                 probs[row][col] = logsig(currSum, 1);
             }
         }
         return probs;
     }
 
-    /**
-     *
-     * @return - the current energy state of the machine
-     */
-    @Override
-    public float getEnergy()
-    {
-        float energy = 0;
-        for (int i=0; i<visibleNodes.length; ++i)
-            for (int j=0; j<hiddenNodes.length; ++j)
-                energy -= visibleNodes[i].value*hiddenNodes[j]*weights[i][j];
-        return energy;
-    }
-
-
     // class for clamped, unclamped inputs
     // (basically a tuple)
+    // only kept so that brains saved with an array of Nodes still load
     class Node implements Serializable{
         public int value;
         public boolean clamped;
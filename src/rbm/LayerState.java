@@ -0,0 +1,361 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * class LayerState
+ *
+ * The binary states of the nodes of one layer, packed 64 to a long, with a
+ * second bitset marking the clamped nodes.  Adjacent RBMs in a LayeredRBM
+ * share one LayerState (the hidden layer of one is the visible layer of the
+ * next), and callers read the states in place through get(), copyTo() and
+ * nextSetBit() rather than through copies.
+ */
+public class LayerState implements Serializable {
+
+    static final long serialVersionUID = 5410127362086117730L;
+
+    private final int size;
+    private final long[] bits;
+    private final long[] clamped;
+
+    /**
+     *
+     * @param size - the number of nodes, all initially off and unclamped
+     */
+    public LayerState(int size) {
+        this.size = size;
+        this.bits = new long[(size + 63) >>> 6];
+        this.clamped = new long[bits.length];
+    }
+
+    /**
+     *
+     * @param states - one state per node (anything but 1 is off)
+     */
+    public LayerState(int[] states) {
+        this(states.length);
+        for (int i = 0; i < states.length; ++i) {
+            if (states[i] == 1) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     *
+     * @param other - the state to copy, clamps included
+     */
+    public LayerState(LayerState other) {
+        this.size = other.size;
+        this.bits = other.bits.clone();
+        this.clamped = other.clamped.clone();
+    }
+
+    /**
+     *
+     * @param other - a state of the same size
+     *
+     * Sets every node to its state in other, clamped or not.  The clamps of
+     * this state are kept.
+     */
+    public void copyFrom(LayerState other) {
+        System.arraycopy(other.bits, 0, bits, 0, bits.length);
+    }
+
+    /**
+     *
+     * @return - the number of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @param index - a node
+     * @return - the state of the node, 0 or 1
+     */
+    public int get(int index) {
+        return (int) (bits[index >>> 6] >>> index) & 1;
+    }
+
+    /**
+     *
+     * @param index - a node
+     * @return - whether the node is on
+     */
+    public boolean isOn(int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     *
+     * @param index - a node
+     * @param value - the new state, 0 or 1
+     *
+     * Sets the state of a node whether or not it is clamped
+     */
+    public void set(int index, int value) {
+        if (value == 1) {
+            bits[index >>> 6] |= 1L << index;
+        } else {
+            bits[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     *
+     * @param index - a node
+     * @param value - the new state, 0 or 1
+     *
+     * Sets the state of a node unless it is clamped
+     */
+    public void setIfUnclamped(int index, int value) {
+        if (!isClamped(index)) {
+            set(index, value);
+        }
+    }
+
+    /**
+     * Turns every node off, clamped or not
+     */
+    public void clear() {
+        java.util.Arrays.fill(bits, 0L);
+    }
+
+    /**
+     *
+     * @return - the number of nodes that are on
+     */
+    public int cardinality() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @param from - the first node to look at
+     * @return - the first node at or after from that is on, or -1 if none is
+     */
+    public int nextSetBit(int from) {
+        return nextBit(from, ON);
+    }
+
+    /**
+     *
+     * @param other - a state of the same size
+     * @return - the number of nodes whose states differ (the Hamming distance)
+     */
+    public int distance(LayerState other) {
+        int count = 0;
+        for (int w = 0; w < bits.length; w++) {
+            count += Long.bitCount(bits[w] ^ other.bits[w]);
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @param other - a state of the same size
+     * @param from - the first node to look at
+     * @return - the first node at or after from whose state differs from its
+     * state in other, or -1 if none does
+     */
+    public int nextDifference(LayerState other, int from) {
+        if (from >= size) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = (bits[w] ^ other.bits[w]) & (-1L << from);
+        while (word == 0) {
+            if (++w == bits.length) {
+                return -1;
+            }
+            word = bits[w] ^ other.bits[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     *
+     * @param from - the first node to look at
+     * @return - the first node at or after from that is on and unclamped, or
+     * -1 if none is
+     */
+    public int nextFreeSetBit(int from) {
+        return nextBit(from, FREE_ON);
+    }
+
+    /**
+     *
+     * @param from - the first node to look at
+     * @return - the first node at or after from that is on and clamped, or -1
+     * if none is
+     */
+    public int nextClampedSetBit(int from) {
+        return nextBit(from, CLAMPED_ON);
+    }
+
+    /**
+     *
+     * @param from - the first node to look at
+     * @return - the first node at or after from that is unclamped, or -1 if
+     * none is
+     */
+    public int nextUnclamped(int from) {
+        return nextBit(from, FREE);
+    }
+
+    // the kinds of node searched for by nextBit
+    private static final int ON = 0;
+    private static final int FREE_ON = 1;
+    private static final int CLAMPED_ON = 2;
+    private static final int FREE = 3;
+
+    private long word(int w, int kind) {
+        switch (kind) {
+            case FREE_ON:
+                return bits[w] & ~clamped[w];
+            case CLAMPED_ON:
+                return bits[w] & clamped[w];
+            case FREE:
+                return ~clamped[w];
+            default:
+                return bits[w];
+        }
+    }
+
+    private int nextBit(int from, int kind) {
+        if (from >= size) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = word(w, kind) & (-1L << from);
+        while (word == 0) {
+            if (++w == bits.length) {
+                return -1;
+            }
+            word = word(w, kind);
+        }
+        int index = (w << 6) + Long.numberOfTrailingZeros(word);
+        return index < size ? index : -1;
+    }
+
+    /**
+     *
+     * @param index - a node
+     * @return - whether the node is clamped
+     */
+    public boolean isClamped(int index) {
+        return (clamped[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     *
+     * @param index - a node
+     * @param clamp - whether the node should be clamped
+     */
+    public void setClamped(int index, boolean clamp) {
+        if (clamp) {
+            clamped[index >>> 6] |= 1L << index;
+        } else {
+            clamped[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     *
+     * @param other - a state of the same size
+     *
+     * Clamps exactly the nodes that are clamped in other.  The node states
+     * are kept.
+     */
+    public void copyClampsFrom(LayerState other) {
+        System.arraycopy(other.clamped, 0, clamped, 0, clamped.length);
+    }
+
+    /**
+     * Releases every clamp
+     */
+    public void unclampAll() {
+        java.util.Arrays.fill(clamped, 0L);
+    }
+
+    /**
+     *
+     * @param srcPos - the first node to copy
+     * @param dest - the array to copy into
+     * @param destPos - the first index of dest to write
+     * @param length - the number of nodes to copy
+     *
+     * Writes the states of nodes [srcPos, srcPos + length) into dest, in the
+     * manner of System.arraycopy
+     */
+    public void copyTo(int srcPos, int[] dest, int destPos, int length) {
+        for (int i = 0; i < length; ++i) {
+            dest[destPos + i] = get(srcPos + i);
+        }
+    }
+
+    /**
+     *
+     * @return - a new int[] of the node states
+     */
+    public int[] toArray() {
+        int[] states = new int[size];
+        copyTo(0, states, 0, size);
+        return states;
+    }
+
+    /**
+     *
+     * @param out - the model file being written
+     *
+     * Writes the size, states and clamps (see class ModelFile)
+     */
+    void writeModel(ModelFile.Output out) throws IOException {
+        out.writeInt(size);
+        out.writeLongs(bits);
+        out.writeLongs(clamped);
+    }
+
+    /**
+     *
+     * @param in - the model file being read
+     * @return - the state written by writeModel
+     */
+    static LayerState readModel(ModelFile.Input in) throws IOException {
+        // the states and the clamps take at least two bits per node
+        LayerState state = new LayerState(in.readLength(false, 2));
+        in.readLongs(state.bits);
+        in.readLongs(state.clamped);
+        return state;
+    }
+} // end of class LayerState
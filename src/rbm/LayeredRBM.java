@@ -22,9 +22,13 @@
 
 package rbm;
 
-import javax.swing.*;
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import encoding.Group;
+import encoding.NoteEncodings;
 //
 //  LayeredRBM.java
 //  
@@ -42,6 +46,12 @@ public class LayeredRBM implements Serializable {
     protected int numLayers;
     protected int inputLength;
     protected int[] layerSizes;
+    protected int batchSize = Params.DEFAULT_BATCH_SIZE;
+    protected boolean parallel = false;
+    protected int trainingThreads = Params.DEFAULT_TRAINING_THREADS;
+    protected boolean hogwild = false;
+    protected int cacheRefreshEpochs = Params.DEFAULT_CACHE_REFRESH_EPOCHS;
+    protected RbmConfig config = RbmConfig.DEFAULT;
     private transient VisualizerFrame visFrame = null;
 
     /**
@@ -55,9 +65,25 @@ public class LayeredRBM implements Serializable {
      * for each hidden layer. The size of this array defines the number of layers
      * int this LayeredRBM.
      *
-     * Constructor for the LayeredRBM class
+     * Constructor for the LayeredRBM class, with the default settings
      */
     public LayeredRBM(int inputLength, int melodyRows, int melodyCols, int[] layerSizes) {
+        this(inputLength, melodyRows, melodyCols, layerSizes, RbmConfig.DEFAULT);
+    }
+
+    /**
+     *
+     * @param inputLength - the size of the inpuut layer
+     * @param melodyRows - the number of rows in a melody
+     * @param melodyCols - the number of columns in a melody
+     * @param layerSizes - the number of nodes in each hidden layer
+     * @param config - the settings of this model (its note encoding decides
+     * the groups of the InputRBM)
+     *
+     * Constructor for the LayeredRBM class
+     */
+    public LayeredRBM(int inputLength, int melodyRows, int melodyCols, int[] layerSizes, RbmConfig config) {
+        this.config = config;
         this.numLayers = layerSizes.length;
         this.inputLength = inputLength;
         this.layerSizes = layerSizes;
@@ -71,8 +97,169 @@ public class LayeredRBM implements Serializable {
         for (int i = 1; i < numLayers; i++) {
             layers[i] = new RBM(layers[i - 1].getHidden(), this.layerSizes[i]);
         }
+        setConfig(config);
     } // end of constructor
 
+    /*
+     * Brains saved before the layer states were packed into LayerStates come
+     * back with a separate copy of each state shared by two layers, so the
+     * visible layer of every RBM is pointed back at the hidden layer below.
+     * Brains saved before RbmConfig get the default settings.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        for (int i = 1; i < layers.length; i++) {
+            layers[i].visibleNodes = layers[i - 1].hiddenNodes;
+        }
+        setConfig((config == null) ? RbmConfig.DEFAULT : config);
+    }
+
+    // for readModel
+    private LayeredRBM() {
+    }
+
+    /**
+     *
+     * @param out - the model file being written
+     *
+     * Writes the settings, states and weights of this model (see class
+     * ModelFile)
+     */
+    void writeModel(ModelFile.Output out) throws IOException {
+        out.writeInt(inputLength);
+        out.writeInt(batchSize);
+        out.writeInt(trainingThreads);
+        out.writeInt(cacheRefreshEpochs);
+        out.writeBoolean(parallel);
+        out.writeBoolean(hogwild);
+
+        out.writeFloat(config.getLearningRate());
+        out.writeInt(config.getFinalActivationMode());
+        out.writeBoolean(config.isGenerationalAnnealing());
+        out.writeInt(config.getVisualDisplayMode());
+        out.writeString(config.getNoteEncoding().name());
+        ConvergenceRule rule = config.getConvergenceRule();
+        out.writeBoolean(rule != null);
+        if (rule != null) {
+            out.writeInt(rule.getMinCycles());
+            out.writeInt(rule.getTolerance());
+            out.writeInt(rule.getPatience());
+        }
+        out.writeBoolean(config.isFastSigmoid());
+
+        out.writeInts(layerSizes);
+        out.writeInt(numLayers);
+        layers[0].visibleNodes.writeModel(out);
+        for (RBM layer : layers) {
+            layer.hiddenNodes.writeModel(out);
+            out.writeFloat(layer.annealingRate);
+            layer.weightMatrix.writeModel(out);
+        }
+
+        InputRBM input = (InputRBM) layers[0];
+        out.writeInt(input.groups.size());
+        for (Group group : input.groups) {
+            out.writeInt(group.startIndex);
+            out.writeInt(group.endIndex);
+            out.writeBoolean(group.oneHot);
+        }
+        out.writeInts(input.ungrouped);
+    }
+
+    /**
+     *
+     * @param in - the model file being read
+     * @return - the model written by writeModel, with adjacent layers sharing
+     * their states again
+     */
+    static LayeredRBM readModel(ModelFile.Input in) throws IOException {
+        LayeredRBM lrbm = new LayeredRBM();
+        lrbm.inputLength = in.readInt();
+        lrbm.batchSize = in.readInt();
+        lrbm.trainingThreads = in.readInt();
+        lrbm.cacheRefreshEpochs = in.readInt();
+        boolean parallel = in.readBoolean();
+        lrbm.hogwild = in.readBoolean();
+
+        RbmConfig config;
+        try {
+            float learningRate = in.readFloat();
+            int finalActivationMode = in.readInt();
+            boolean generationalAnnealing = in.readBoolean();
+            int visualDisplayMode = in.readInt();
+            NoteEncodings noteEncoding = NoteEncodings.valueOf(in.readString());
+            ConvergenceRule rule = null;
+            if (in.readBoolean()) {
+                rule = new ConvergenceRule(in.readInt(), in.readInt(), in.readInt());
+            }
+            boolean fastSigmoid = in.readBoolean();
+            config = new RbmConfig(learningRate, finalActivationMode, generationalAnnealing,
+                    visualDisplayMode, noteEncoding, rule, fastSigmoid);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad settings in the model file: " + e.getMessage(), e);
+        }
+
+        lrbm.layerSizes = in.readInts();
+        lrbm.numLayers = in.readLength(false, 0); // must match layerSizes
+        if (lrbm.layerSizes == null || lrbm.numLayers != lrbm.layerSizes.length || lrbm.numLayers == 0) {
+            throw new IOException("Bad layer sizes in the model file");
+        }
+        lrbm.layers = new RBM[lrbm.numLayers];
+        LayerState visible = LayerState.readModel(in);
+        WeightMatrix[] weights = new WeightMatrix[lrbm.numLayers];
+        LayerState[] hidden = new LayerState[lrbm.numLayers];
+        float[] annealingRates = new float[lrbm.numLayers];
+        for (int i = 0; i < lrbm.numLayers; i++) {
+            hidden[i] = LayerState.readModel(in);
+            annealingRates[i] = in.readFloat();
+            weights[i] = WeightMatrix.readModel(in);
+            LayerState below = (i == 0) ? visible : hidden[i - 1];
+            if (weights[i].getNumRows() != below.size() || weights[i].getNumCols() != hidden[i].size()) {
+                throw new IOException("The weights of layer " + i + " do not fit its states");
+            }
+        }
+
+        int numGroups = in.readLength(false, 72);
+        ArrayList<Group> groups = new ArrayList<Group>(numGroups);
+        for (int i = 0; i < numGroups; i++) {
+            groups.add(new Group(in.readInt(), in.readInt(), in.readBoolean()));
+        }
+        int[] ungrouped = in.readInts();
+
+        lrbm.layers[0] = new InputRBM(visible, hidden[0], weights[0], groups, ungrouped);
+        for (int i = 1; i < lrbm.numLayers; i++) {
+            lrbm.layers[i] = new RBM(hidden[i - 1], hidden[i], weights[i]);
+        }
+        for (int i = 0; i < lrbm.numLayers; i++) {
+            lrbm.layers[i].annealingRate = annealingRates[i];
+        }
+        lrbm.setParallel(parallel);
+        lrbm.setConfig(config);
+        return lrbm;
+    }
+
+    /**
+     *
+     * @return - the settings of this model
+     */
+    public RbmConfig getConfig() {
+        return config;
+    }
+
+    /**
+     *
+     * @param config - the new settings of this model and its layers.  Takes
+     * effect from the next weight update or generation.  The note encoding
+     * should not change after construction, since the groups of the InputRBM
+     * were made for the old one.
+     */
+    public void setConfig(RbmConfig config) {
+        this.config = config;
+        for (RBM layer : layers) {
+            layer.setConfig(config);
+        }
+    }
+
     /**
      *
      * @return - the input length of the LRBM
@@ -89,14 +276,113 @@ public class LayeredRBM implements Serializable {
         return layerSizes;
     }
 
+    /**
+     *
+     * @return - whether the layers split their activations across threads
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     *
+     * @param parallel - whether the layers should split each activation
+     * across the threads of the shared ForkJoinPool (see class Parallel)
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+        for (RBM layer : layers) {
+            layer.setParallel(parallel);
+        }
+    }
+
+    /**
+     *
+     * @return - the number of inputs per weight update during training
+     */
+    public int getBatchSize() {
+        // brains saved before batching existed deserialize with 0
+        return Math.max(1, batchSize);
+    }
+
+    /**
+     *
+     * @param batchSize - the number of inputs whose statistics are gathered
+     * before each weight update. 1 updates the weights after every input.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     *
+     * @return - the number of worker threads that split the inputs during
+     * training
+     */
+    public int getTrainingThreads() {
+        // brains saved before data-parallel training existed deserialize with 0
+        return Math.max(1, trainingThreads);
+    }
+
+    /**
+     *
+     * @param trainingThreads - the number of worker threads that split the
+     * inputs during training (see class ParallelTrainer). 1 trains on the
+     * calling thread.  Each thread trains a mini-batch of its own, and
+     * (without Hogwild) their statistics are summed into one weight update,
+     * so one update covers batchSize * trainingThreads inputs.
+     */
+    public void setTrainingThreads(int trainingThreads) {
+        this.trainingThreads = trainingThreads;
+    }
+
+    /**
+     *
+     * @return - whether training workers write to the weights without locking
+     */
+    public boolean isHogwild() {
+        return hogwild;
+    }
+
+    /**
+     *
+     * @param hogwild - whether training workers should write their weight
+     * changes straight into the shared weights instead of summing them before
+     * each update. Only used with more than one training thread.
+     */
+    public void setHogwild(boolean hogwild) {
+        this.hogwild = hogwild;
+    }
+
+    /**
+     *
+     * @return - the number of epochs between resamplings of the cached
+     * lower-layer representations, or 0 if they are not cached
+     */
+    public int getCacheRefreshEpochs() {
+        return cacheRefreshEpochs;
+    }
+
+    /**
+     *
+     * @param cacheRefreshEpochs - when training layers above the first, each
+     * input's representation at the layer being trained is sampled through
+     * the frozen layers below once and reused, resampled every
+     * cacheRefreshEpochs epochs.  0 samples it again for every input in
+     * every epoch.
+     */
+    public void setCacheRefreshEpochs(int cacheRefreshEpochs) {
+        this.cacheRefreshEpochs = cacheRefreshEpochs;
+    }
+
     /**
      *
      * @param layerIndex - which layer to get the weights from
-     * @return - a 2D float array of weights (note - not a copy,
-     * points directly to the actual weight array for this layer
+     * @return - the WeightMatrix of this layer (note - not a copy,
+     * points directly to the actual weights for this layer
      * in memory).
      */
-    public float[][] getWeightsForLayer(int layerIndex) {
+    public WeightMatrix getWeightsForLayer(int layerIndex) {
         return layers[layerIndex].getWeights();
     }
     /*
@@ -139,11 +425,11 @@ public class LayeredRBM implements Serializable {
      * @param inputs - the array of DataVessels to train on
      * @param numEpochs - the number of epochs to train for
      *
-     * Convenience function for calling layeredLearn outside of a GUI - see
+     * Convenience function for calling layeredLearn without listeners - see
      * the description of the other layeredLearn method for more details.
      */
     public void layeredLearn(DataVessel[] inputs, int numEpochs) throws InterruptedException{
-        layeredLearn(inputs, numEpochs, 0, null, null);
+        layeredLearn(inputs, numEpochs, 0);
     }
 
     /**
@@ -152,123 +438,122 @@ public class LayeredRBM implements Serializable {
      * @param numEpochs - the number of epochs to train for
      * @param startLayer - the layer at which to start the training (used for
      * adding layers to machines with some layers already trained)
-     * @param progressIndicator - a ProgressBars panel to update in the GUI
-     * @param energyDisplay - an EnergyDisplay panel to update in the GUI
+     * @param listeners - listeners to tell about the progress of the training
+     * (e.g. the ProgressBars and EnergyDisplay of the GUI), possibly none
      *
      * Trains layered RBM on a series of input arrays by training each RBM layer
      * in turn.  Layers are trained through the contrastive divergence method
      * implemented in RBM.train().  For each RBM layer after the first, inputs
      * are propagated through previous layers by repeatedly activating hidden
-     * nodes. Also updates the GUI through the indicator panels passed in. Call
-     * the other layeredLearn function if you need to train outside the GUI.
-     */
-    public void layeredLearn(DataVessel[] inputs, int numEpochs, int startLayer, ProgressBars progressIndicator, EnergyDisplay energyDisplay) throws InterruptedException{
-        // the progress bar and status indicator are for the GUI
-        // if you are not using a GUI, these can be ignored by calling the
-        // three parameter layeredLearn method.
-        // <editor-fold defaultstate="collapsed" desc="Set Progress Bar Range">
+     * nodes. Listeners are called on the training thread, with per-input
+     * progress limited to Params.MAX_PROGRESS_EVENTS_PER_SECOND.
+     *
+     * With a batch size above 1, inputs are gathered into mini-batches and
+     * each batch is trained with RBM.trainBatch() and a single weight update.
+     * With more than one training thread the inputs are split across workers
+     * instead, one mini-batch each (see class ParallelTrainer).  With a cache refresh interval (see
+     * setCacheRefreshEpochs) the inputs are propagated to upper layers once
+     * every few epochs rather than once per input per epoch.
+     */
+    public void layeredLearn(DataVessel[] inputs, int numEpochs, int startLayer, TrainingListener... listeners) throws InterruptedException{
+        TrainingListeners all = new TrainingListeners(listeners);
+        final TrainingListener listener = all.isEmpty() ? null : all;
+        final int batchSize = getBatchSize();
+        ParallelTrainer trainer = null;
+        if (getTrainingThreads() > 1) {
+            trainer = new ParallelTrainer(getTrainingThreads(), hogwild);
+        }
+        final int step = (trainer == null) ? 1 : trainer.getChunkSize(batchSize);
         final long startTime = System.currentTimeMillis();
-        final int finalNumEpochs = numEpochs;
-        final ProgressBars tempProgressBars = progressIndicator;
-        if (progressIndicator != null) {
-            final int tempLength = inputs.length;
-            SwingUtilities.invokeLater(new Runnable() {
-
-                public void run() {
-                    tempProgressBars.setPartialBarRange(0, finalNumEpochs * tempLength);
-                    tempProgressBars.setOverallBarRange(0, numLayers * finalNumEpochs * tempLength);
-                }
-            });
-        } // </editor-fold>
+        final long progressInterval = 1000000000L / Params.MAX_PROGRESS_EVENTS_PER_SECOND;
+        long nextProgress = System.nanoTime();
 
+        if (listener != null) {
+            listener.trainingStarted(numLayers, numEpochs, inputs.length);
+        }
 
         //System.out.println("Learning network weights...");
         for (int currLayer = startLayer; currLayer < numLayers; currLayer++) {
 
-            // <editor-fold defaultstate="collapsed" desc="Update Progress Bar Description">
-            if (progressIndicator != null) {
-                final int tempLayer = currLayer;
-                SwingUtilities.invokeLater(new Runnable() {
+            if (listener != null) {
+                listener.layerStarted(currLayer);
+            }
+            // before any worker can hold on to mapped weights
+            layers[currLayer].prepareTraining();
 
-                    public void run() {
-                        tempProgressBars.setActionDescription("Training layer " + tempLayer);
-                    }
-                });
-            }// </editor-fold>
+            //rows of visible states gathered for a single weight update
+            int[][] batch = null;
+            if (batchSize > 1 && trainer == null) {
+                batch = new int[batchSize][layers[currLayer].getWeights().getNumRows()];
+            }
+
+            //visible states of this layer for every input, when cached
+            LayerState[] representations = null;
 
             //System.out.println("\nTraining layer "+currLayer+":");
             for (int epoch = 0; epoch < numEpochs; epoch++) {
 
                 float annealingRate = (((Params.MIN_ANNEALING_RATE-1)/numEpochs)*epoch)+1;
                 layers[currLayer].setAnnealingRate(annealingRate);
-                if (energyDisplay != null) {
-                    energyDisplay.addPoint(currLayer, layers[currLayer].getEnergy());
+                if (listener != null) {
+                    listener.epochStarted(currLayer, epoch, layers[currLayer].getEnergy());
+                }
+
+                if (currLayer > 0 && cacheRefreshEpochs > 0 && epoch % cacheRefreshEpochs == 0) {
+                    representations = propagateAll(inputs, currLayer, representations);
                 }
 
-                // <editor-fold defaultstate="collapsed" desc="If The Progress Has Stopped, Say So">
-                for (int currInput = 0; currInput < inputs.length; currInput++) {
+                int batchLength = 0;
+
+                for (int currInput = 0; currInput < inputs.length; currInput += step) {
                     if (Thread.interrupted()) {
-                        if (progressIndicator != null) {
-                            SwingUtilities.invokeLater(new Runnable() {
-                                public void run() {
-                                    tempProgressBars.setActionDescription("Training stopped");
-                                    tempProgressBars.setProgressDescription("");
-                                    tempProgressBars.setOverallProgress(0);
-                                    tempProgressBars.setPartialProgress(0);
-                                }
-                            });
+                        if (listener != null) {
+                            listener.trainingStopped();
                         }
                         throw new InterruptedException();
-                    } // </editor-fold>
-
-                    // <editor-fold defaultstate="collapsed" desc="Update Progress Bar">
-                    if (progressIndicator != null) {
-                        final int tempLayer = currLayer;
-                        final int tempEpoch = epoch;
-                        final int tempInput = currInput;
-                        final int tempInputLength = inputs.length;
-                        final String formattedInput = String.format("%0"+(tempInputLength+"").length()+""+"d", tempInput); //sorry about this line :(
-
-                        SwingUtilities.invokeLater(new Runnable() {
-
-                            public void run() {
-                                tempProgressBars.setProgressDescription("Epoch: " + tempEpoch + ", Input: " + formattedInput + " / " + tempInputLength);
-                                tempProgressBars.setOverallProgress(tempLayer * finalNumEpochs * tempInputLength + tempEpoch * tempInputLength + tempInput);
-                                tempProgressBars.setPartialProgress(tempEpoch * tempInputLength + tempInput);
-                            }
-                        });
-                    } // </editor-fold>
-
-                    if (currLayer == 0) {
-                        layers[0].setInput(inputs[currInput].getData());
-                        layers[0].train(Params.NUM_TRAINING_CYCLES);
-                        layers[0].updateWeights(inputs.length);
+                    }
+
+                    // at most Params.MAX_PROGRESS_EVENTS_PER_SECOND updates
+                    if (listener != null && System.nanoTime() - nextProgress >= 0) {
+                        listener.progress(currLayer, epoch, currInput);
+                        nextProgress = System.nanoTime() + progressInterval;
+                    }
+
+                    if (trainer != null) {
+                        int end = Math.min(inputs.length, currInput + step);
+                        trainer.train(layers, currLayer, inputs, currInput, end, batchSize, inputs.length, representations);
+                        if (!trainer.isHogwild()) {
+                            layers[currLayer].updateWeights(inputs.length);
+                        }
+                    } else if (batchSize == 1) {
+                        if (currLayer == 0) {
+                            layers[0].setInput(inputs[currInput]);
+                            layers[0].train(Params.NUM_TRAINING_CYCLES);
+                            layers[0].updateWeights(inputs.length);
+                        } else {
+                            loadInput(inputs, representations, currInput, currLayer);
+                            layers[currLayer].train(Params.NUM_TRAINING_CYCLES);
+                            layers[currLayer].updateWeights(inputs.length);
+                        }
                     } else {
-                        propagateInput(inputs[currInput].getData(), currLayer);
-                        layers[currLayer].train(Params.NUM_TRAINING_CYCLES);
-                        layers[currLayer].updateWeights(inputs.length);
+                        loadInput(inputs, representations, currInput, currLayer);
+                        layers[currLayer].getVisible().copyTo(0, batch[batchLength], 0, batch[batchLength].length);
+                        batchLength++;
+
+                        if (batchLength == batchSize || currInput == inputs.length - 1) {
+                            layers[currLayer].trainBatch(batch, batchLength, Params.NUM_TRAINING_CYCLES);
+                            layers[currLayer].updateWeights(inputs.length);
+                            batchLength = 0;
+                        }
                     }
                 }
             }
         }
         //System.out.println("");
 
-        // <editor-fold defaultstate="collapsed" desc="Reset Progress Bar, Show Finishing Time">
-        final long endTime = System.currentTimeMillis();
-
-        if (progressIndicator != null) {
-            SwingUtilities.invokeLater(new Runnable() {
-
-                public void run() {
-                    tempProgressBars.setActionDescription("Finished training");
-                    double time = (endTime-startTime)/60000.0;
-                    java.text.DecimalFormat df = new java.text.DecimalFormat("#.##");
-                    tempProgressBars.setProgressDescription("Time elapsed: "+df.format(time)+" minutes");
-                    tempProgressBars.setOverallProgress(0);
-                    tempProgressBars.setPartialProgress(0);
-                }
-            });
-        } // </editor-fold>
+        if (listener != null) {
+            listener.trainingFinished(System.currentTimeMillis() - startTime);
+        }
 
     } // end of method layeredLearn
 
@@ -282,13 +567,56 @@ public class LayeredRBM implements Serializable {
      * input through the network by repeatedly activating hidden nodes and
      * assigning the result to the next layers input nodes.
      */
-    protected void propagateInput(int[] input, int depth) {
+    protected void propagateInput(DataVessel input, int depth) {
         layers[0].setInput(input);
         for (int i = 0; i < depth; i++) {
             layers[i].activateHidden();
         }
     }
 
+    /**
+     * propagateAll
+     * @param inputs - the inputs to propagate
+     * @param depth - the number of layers to propagate through
+     * @param representations - the array to reuse, or null to allocate one
+     * @return - the visible state of layers[depth] for every input
+     *
+     * Samples the representation of every input at layer depth, to be reused
+     * by loadInput.
+     */
+    protected LayerState[] propagateAll(DataVessel[] inputs, int depth, LayerState[] representations) {
+        if (representations == null) {
+            representations = new LayerState[inputs.length];
+        }
+        for (int i = 0; i < inputs.length; i++) {
+            propagateInput(inputs[i], depth);
+            if (representations[i] == null) {
+                representations[i] = new LayerState(layers[depth].getVisible());
+            } else {
+                representations[i].copyFrom(layers[depth].getVisible());
+            }
+        }
+        return representations;
+    }
+
+    /**
+     * loadInput
+     * @param inputs - the training inputs
+     * @param representations - the cached representations, or null
+     * @param index - the input to load
+     * @param depth - the layer whose visible nodes receive it
+     *
+     * Sets the visible nodes of layers[depth] to the representation of an
+     * input, from the cache if there is one and by propagation otherwise.
+     */
+    protected void loadInput(DataVessel[] inputs, LayerState[] representations, int index, int depth) {
+        if (representations != null) {
+            layers[depth].getVisible().copyFrom(representations[index]);
+        } else {
+            propagateInput(inputs[index], depth);
+        }
+    }
+
     /**
      *
      * @param seed - the data with which to start the generation. Usually contains
@@ -297,105 +625,119 @@ public class LayeredRBM implements Serializable {
      * @return - a DataVessel now containing data generated by the LRBM.
      * NOTE: Directly modifies the passed in seed. Make a copy of seed before
      * generating if you need it afterwards.
+     *
+     * Shows the generation in a Visualizer unless the visual display mode of
+     * the config is NONE or there is no display, in which case Swing is never
+     * touched.  Generates on a new GibbsChain with the clamps set on this LRBM.
      */
     public DataVessel layeredGenerate(DataVessel seed, int numCycles) {
-        //variable declarations
-        Visualizer vis = null;
-        float annealingRate = 1;
+        return layeredGenerate(newChainWithClamps(), seed, numCycles);
+    }
+
+    /**
+     *
+     * @param chain - the chain to generate on, with its clamps already set
+     * @param seed - the data with which to start the generation (modified
+     * in place)
+     * @param numCycles - the number of generation cycles before the data is returned.
+     * @return - the seed, now containing data generated by the LRBM.
+     *
+     * Same as layeredGenerate(seed, numCycles) on a chain of the caller.
+     * Only the Visualizer frame is shared between chains, so concurrent
+     * generations should turn the visual display off.
+     */
+    public DataVessel layeredGenerate(GibbsChain chain, DataVessel seed, int numCycles) {
+        chain.setInput(seed.getData());
+        return chain.run(seed, numCycles, newPublisher(chain, seed));
+    }
+
+    /**
+     *
+     * @param chain - the chain to sample, with its clamps already set
+     * @param seed - the data with which to start the chain (only read)
+     * @param numSamples - the number of outputs to draw
+     * @param burnInCycles - the number of generation cycles before the first
+     * output is drawn
+     * @param thinning - the number of generation cycles between two outputs
+     * @return - the outputs, each a new DataVessel shaped like seed
+     *
+     * Draws numSamples outputs from one chain, which burns in only once (see
+     * GibbsChain.sample), showing it in the Visualizer as layeredGenerate does
+     */
+    public DataVessel[] layeredSample(GibbsChain chain, DataVessel seed, int numSamples,
+            int burnInCycles, int thinning) {
+        return chain.sample(seed, numSamples, burnInCycles, thinning, newPublisher(chain, seed));
+    }
 
-        // Graphically display visible nodes
-        if (Params.VISUAL_DISPLAY_MODE > 0) {
+    // the publisher that shows chain in the Visualizer frame, or null if the
+    // visual display is off (or there is no display)
+    private SnapshotPublisher newPublisher(GibbsChain chain, DataVessel seed) {
+        if (config.getVisualDisplayMode() > 0 && !GraphicsEnvironment.isHeadless()) {
             if (visFrame == null) {
                 visFrame = new VisualizerFrame(seed.getNumRows(), seed.getNumCols());
             }
-            vis = new Visualizer(layers[0].getVisible(), seed.getNumRows(), seed.getNumCols());
+            Visualizer vis = new Visualizer(chain.getVisible(), seed.getNumRows(), seed.getNumCols());
             visFrame.addVisualizer(vis);
+            return new SnapshotPublisher(vis, Params.SNAPSHOT_INTERVAL, SnapshotPublisher.SWING_EXECUTOR);
         }
+        return null;
+    }
 
-        //testing size of our seed data array
-        //System.out.println(seed.getData().length + " seed data length");
-        layers[0].setInput(seed.getData());
-        for (int cycle = 0; cycle < numCycles; cycle++)
-        {
-
-            if (Params.GENERATIONAL_ANNEALING)
-                //NOTE: annealing rate lowers from 1 to MIN_ANNEALING_RATE over generation
-                //annealingRate = ((double)(cycle))/numCycles;
-                annealingRate = (((Params.MIN_ANNEALING_RATE-1)/numCycles)*cycle)+1;
-
-
-            // Propagate inputs forward through hidden layers
-            for (int i = 0; i < layers.length; ++i) {
-                if (Params.GENERATIONAL_ANNEALING) {
-                    layers[i].setAnnealingRate(annealingRate);
-                }
-                layers[i].activateHidden();
-            }
-
-            // Propagate inputs backwards through visible layers
-            for (int i = layers.length; i > 0; --i) {
-                layers[i - 1].activateVisible();
-            }
-
-            // Print graphical display
-            if (Params.VISUAL_DISPLAY_MODE > 0 && vis != null) {
-                visualizeInputs(vis, seed.getNumRows(), seed.getNumCols());
-            }
-        }
-
-        //final generation cycle
-        //  * don't bother annealing
-        //  * perform special visible node activation if wanted
-        for (int i = 0; i < layers.length; ++i) {
-            layers[i].activateHidden();
-        }
-
-        for (int i = layers.length; i > 1; --i) {
-            layers[i - 1].activateVisible();
-        }
+    /**
+     *
+     * @param seed - the data with which to start the generation (modified
+     * in place, as in the other layeredGenerate)
+     * @param numCycles - the number of generation cycles before the data is returned.
+     * @param publisher - where to send snapshots of the visible layer, or null
+     * to generate headless
+     * @return - the seed, now containing data generated by the LRBM.
+     *
+     * Runs a new GibbsChain that starts with the clamps set on this LRBM, so
+     * the node states of the layers themselves are left alone.
+     */
+    public DataVessel layeredGenerate(DataVessel seed, int numCycles, SnapshotPublisher publisher) {
+        return newChainWithClamps().generate(seed, numCycles, publisher);
+    }
 
-        //final visible node activation:
-        switch (Params.FINAL_ACTIVATION_MODE) {
-            case Params.MAX_PROB:
-                ((InputRBM)layers[0]).activateVisibleMaxProb();
-                break;
-            case Params.PROB_DIST:
-                ((InputRBM)layers[0]).activateVisibleProbDist();
-                break;
-            default:
-                layers[0].activateVisible();
+    /**
+     *
+     * @param chains - the chains to generate on, with their clamps already set
+     * @param seeds - the data with which to start each chain (modified in
+     * place), one per chain
+     * @param numCycles - the number of generation cycles before the data is returned.
+     * @return - the seeds, now containing data generated by the LRBM.
+     *
+     * Advances all the chains together in a GibbsBatch, unless each
+     * generation is to be shown in a Visualizer, in which case they are run
+     * one after another.  Either way every chain gets the same result.
+     */
+    public DataVessel[] layeredGenerate(GibbsChain[] chains, DataVessel[] seeds, int numCycles) {
+        if (config.getVisualDisplayMode() == Params.NONE || GraphicsEnvironment.isHeadless()) {
+            return new GibbsBatch(chains).generate(seeds, numCycles);
         }
-        System.arraycopy(layers[0].getVisible(), 0, seed.getMelody(), 0, seed.getMelodySize());
-        if (seed.getChords() != null) {
-            System.arraycopy(layers[0].getVisible(), seed.getMelodySize(), seed.getChords(), 0, seed.getChordsSize());
+        for (int i = 0; i < chains.length; i++) {
+            layeredGenerate(chains[i], seeds[i], numCycles);
         }
-        return seed;
+        return seeds;
     }
 
     /**
-     * visualizeInputs
-     * @param vis - the visualizer
-     * 
-     * Graphically displays the first layer of a layered RBM
+     *
+     * @return - a new GibbsChain on this LRBM, drawing from the sampler of the
+     * calling thread
+     *
+     * Each chain has its own states and clamps, so several chains may generate
+     * from this LRBM at once.
      */
-    private void visualizeInputs(Visualizer vis, int rows, int cols) {
-        //display stuff
-        if (Params.VISUAL_DISPLAY_MODE == Params.NONE) {
-            return;
-        } else if (Params.VISUAL_DISPLAY_MODE == Params.STATE) {
-            vis.visualize(layers[0].getVisible(), rows, cols);
-        } else if (Params.VISUAL_DISPLAY_MODE == Params.HINTON) {
-            vis.visualize(((InputRBM) layers[0]).getHintonDiagram(rows, cols));
-        } else {
-            System.err.println("Display parameters set incorrectly");
-        }
+    public GibbsChain newChain() {
+        return new GibbsChain(this);
+    }
 
-        //sleep
-        try {
-            java.lang.Thread.sleep(Params.SLEEP_TIME);
-        } catch (InterruptedException e) {
-            System.err.println("Problem pausing graphical display");
-        }
+    // a new chain that keeps the clamps set through clamp(int, int)
+    private GibbsChain newChainWithClamps() {
+        GibbsChain chain = newChain();
+        chain.copyClampsFrom(layers[0].getVisible());
+        return chain;
     }
 
     /**
@@ -425,7 +767,7 @@ public class LayeredRBM implements Serializable {
                 //for each row, we'll make groups according to note encoding lengths
                 //row kernel marks our current index while grouping the row, starts at beginning index of row.
                 int rowKernel = row * numCols;
-                Group[] groupArray = Params.noteEncoding.getGroups();
+                Group[] groupArray = config.getNoteEncoding().getGroups();
                 for(int i = 0; i < groupArray.length; i++)    //get the current encoding's group sizes
                 {
                     //temp.makeGroup's second parameter is exclusive end index
@@ -454,7 +796,7 @@ public class LayeredRBM implements Serializable {
         long time = System.currentTimeMillis();
         for (int layer = 0; layer < layers.length; layer++) {
             RBM currLayer = layers[layer];
-            float[][] weights = currLayer.weights;
+            WeightMatrix weights = currLayer.getWeights();
             String currFilename = filename + "_layer_" + layer + "_" + time;
 
             if(layer == 0){
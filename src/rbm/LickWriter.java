@@ -0,0 +1,101 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package rbm;
+
+import java.io.*;
+
+/**
+ * class LickWriter
+ *
+ * Writes a .lick file (the format of FileParser.writeDataVesselToFile) as
+ * the rows of a generation arrive.  The melody rows go straight to disk;
+ * the chords, which a .lick file lists after the whole melody, are kept
+ * until close().
+ */
+class LickWriter implements MelodyWriter {
+
+    private final BufferedWriter out;
+    private final int numRows;
+    private int rowsWritten = 0;
+    private int[] chords = null;
+    private IOException error = null;
+
+    /**
+     *
+     * @param filename - the file to write to
+     * @param numRows - the number of rows that will be written
+     * @param numCols - the number of melody columns per row
+     */
+    LickWriter(String filename, int numRows, int numCols) throws IOException {
+        this.numRows = numRows;
+        out = new BufferedWriter(new FileWriter(filename));
+        //write arrays sizes at top of file
+        out.write(numRows + "");
+        out.newLine();
+        out.write(numCols + "");
+        out.newLine();
+    }
+
+    public void rowsGenerated(DataVessel rows, int firstRow) {
+        if (error != null) {
+            return;
+        }
+        try {
+            if (firstRow != rowsWritten || firstRow + rows.getNumRows() > numRows) {
+                throw new IOException("Rows " + firstRow + " to " + (firstRow + rows.getNumRows())
+                        + " out of order or past row " + numRows);
+            }
+            FileParser.writeArrayToStream(rows.getMelody(), rows.getNumRows(), out);
+            out.flush();
+            if (rows.getChords() != null) {
+                int chordCols = rows.getChordsSize() / rows.getNumRows();
+                if (chords == null) {
+                    chords = new int[numRows * chordCols];
+                }
+                System.arraycopy(rows.getChords(), 0, chords, firstRow * chordCols, rows.getChordsSize());
+            }
+            rowsWritten += rows.getNumRows();
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    /**
+     * Writes the chords and closes the file; throws the first error met
+     * while writing, or an IOException if fewer rows than promised came
+     */
+    public void close() throws IOException {
+        try {
+            if (error == null && rowsWritten != numRows) {
+                error = new IOException("Only " + rowsWritten + " of " + numRows + " rows were generated");
+            }
+            if (error == null && chords != null) {
+                FileParser.writeArrayToStream(chords, numRows, out);
+            }
+        } finally {
+            out.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+} // end of class LickWriter
@@ -23,6 +23,7 @@
 package rbm;
 import javax.swing.*;
 import java.io.*;
+import encoding.NoteEncodings;
 /**
  *
  * @author Peter Swire
@@ -92,6 +93,15 @@ public class MainFrame extends JFrame {
         return paramsPanel.getLearningRate();
     }
 
+    /**
+     *
+     * @return - the settings chosen in the panels, for a new brain
+     */
+    public RbmConfig getConfig() {
+        return new RbmConfig(paramsPanel.getLearningRate(), paramsPanel.getFinalActivationMode(),
+                genPanel.annealingOn(), paramsPanel.getVisualDisplayMode(), Params.DEFAULT_NOTE_ENCODING);
+    }
+
     public boolean transposeInputs() {
         return trainingPanel.transposeInputs();
     }
@@ -230,7 +240,7 @@ public class MainFrame extends JFrame {
             try {
                 String filepath = chooser.getSelectedFile().getCanonicalPath();
                 if (!filepath.endsWith(".brain")) filepath += ".brain";
-                FileParser.writeObject(brain, filepath);
+                FileParser.writeBrain(brain, filepath);
                 dirtyBit = false;
             } catch (IOException ex) {
                 System.err.println("Error saving to file");
@@ -252,7 +262,7 @@ public class MainFrame extends JFrame {
         });
         int status = chooser.showOpenDialog(this);
         if (status == JFileChooser.APPROVE_OPTION) {
-            brain = (MusicBrain)FileParser.readObject(chooser.getSelectedFile());
+            brain = FileParser.readBrain(chooser.getSelectedFile());
             brain.setOwner(this);
             paramsPanel.importSettings(brain);
             trainingPanel.importSettings(brain);
@@ -392,7 +402,7 @@ public class MainFrame extends JFrame {
                                 //if we are past the first layer's round of training for all epochs, now we'll split and train each brain off of the saved brain for that epoch level
                                 if(i > 0)
                                 {
-                                    brain = (MusicBrain) FileParser.readObject("Brains/ContinuousGen/" + (i-1) + "Layer" + (y*trainingPanel.getEpochStepSize()) + "Epoch.brain");
+                                    brain = FileParser.readBrain("Brains/ContinuousGen/" + (i-1) + "Layer" + (y*trainingPanel.getEpochStepSize()) + "Epoch.brain");
                                     //add layer to brain, which will be auto-trained
                                     brain.setNumEpochs(y*trainingPanel.getEpochStepSize());
                                     brain.setOwner(owner);
@@ -404,7 +414,7 @@ public class MainFrame extends JFrame {
                                     brain.train(i);
                                 }
                                 
-                                FileParser.writeObject(brain, "Brains/ContinuousGen/" + i + "Layer" + (y*trainingPanel.getEpochStepSize()) + "Epoch.brain");
+                                FileParser.writeBrain(brain, "Brains/ContinuousGen/" + i + "Layer" + (y*trainingPanel.getEpochStepSize()) + "Epoch.brain");
                             }
                         }
                     }
@@ -442,38 +452,78 @@ public class MainFrame extends JFrame {
             return;
         }
         
-        DataVessel generationSeed = FileParser.parseFile(chordSeedFile);
+        // generate with the generation settings currently chosen in the panels
+        brain.setConfig(brain.getConfig()
+                .withFinalActivationMode(paramsPanel.getFinalActivationMode())
+                .withVisualDisplayMode(paramsPanel.getVisualDisplayMode())
+                .withGenerationalAnnealing(genPanel.annealingOn()));
+        NoteEncodings encoding = brain.getConfig().getNoteEncoding();
+
+        DataVessel generationSeed = FileParser.parseFile(chordSeedFile, encoding);
         System.out.println(generationSeed.getLength() + " parsed length");
-        generationSeed = DataGenerator.chordData(generationSeed.getMelodySize(), generationSeed.getChords());
+        generationSeed = DataGenerator.chordData(generationSeed.getMelodySize(), generationSeed.getChords(),
+                brain.newSampler());
         System.out.println(generationSeed.getLength() + "chord length");
         DataVessel output = null;
 
         // used as a tag at the end of a filename, so that all the outputs can be associated with each other
         long time = System.currentTimeMillis();
 
+        // the non-windowed outputs are all generated together, or drawn from
+        // one chain if thinning is set
+        DataVessel[] outputs = null;
+        GenerationMetrics[] metrics = new GenerationMetrics[genPanel.getNumOutputs()];
+        if (!genPanel.windowedOn() && genPanel.getThinning() > 0) {
+            GenerationMetrics drawMetrics = new GenerationMetrics();
+            outputs = brain.generateThinned(generationSeed, genPanel.getNumOutputs(),
+                    genPanel.getNumGenCycles(), genPanel.getThinning(), drawMetrics);
+            System.out.println(genPanel.getNumOutputs() + " outputs from one chain: " + drawMetrics);
+        } else if (!genPanel.windowedOn()) {
+            outputs = brain.generate(generationSeed, genPanel.getNumOutputs(), genPanel.getNumGenCycles(), metrics);
+        }
+
+        //resolution scalar seems to affect both reading and writing of Leadsheets, maybe increasing it can improve detection of smaller features
+        int rowsPerBeat = leadsheet.Constants.BEAT / leadsheet.Constants.RESOLUTION_SCALAR;
+
         for (int i = 0; i < genPanel.getNumOutputs(); i++) {
-            if (!genPanel.windowedOn()) { //non-windowed case
-                output = brain.generate(generationSeed, genPanel.getNumGenCycles());
-            } else { //windowed case
+            String extension = genPanel.getSelectedFileExtension();
+            String filename = genPanel.getOutDirectory() + File.separatorChar + genPanel.getOutFilename() + "_" + i + "_" + time +
+                    extension;
+
+            if (genPanel.windowedOn()) { //windowed case, written window by window as they are generated
                 if (brain.getNumMelodyRows() % genPanel.getGenStepSize() != 0) {
                     JOptionPane.showMessageDialog(this, "Chosen seed and step size incompatible with trained network. \n" +
                             "Make sure the file and network have the same pitch range and that step size divides " + brain.getNumMelodyRows(),
                             "LRBM Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                output = brain.loopingWindowedGenerate(generationSeed, genPanel.getNumGenCycles(),
-                        genPanel.getGenStepSize(), genPanel.getNewMelodySize());
+                int cycles = genPanel.getNumGenCycles();
+                GenerationMetrics windowMetrics = new GenerationMetrics();
+                try {
+                    MelodyWriter writer = FileParser.openMelodyWriter(filename,
+                            MusicBrain.getNumWindowedRows(genPanel.getNewMelodySize(), genPanel.getGenStepSize()),
+                            brain.getNumMelodyCols(), rowsPerBeat, encoding);
+                    try {
+                        brain.loopingWindowedGenerate(generationSeed, cycles, genPanel.getWindowCycles(),
+                                genPanel.getGenStepSize(), genPanel.getNewMelodySize(), writer, windowMetrics);
+                    } finally {
+                        writer.close();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error writing to file " + filename + ": " + e.getMessage());
+                }
+                System.out.println(filename + ": " + windowMetrics);
+                continue;
             }
-            
-            String extension = genPanel.getSelectedFileExtension();
-            String filename = genPanel.getOutDirectory() + File.separatorChar + genPanel.getOutFilename() + "_" + i + "_" + time +
-                    extension;
 
+            output = outputs[i]; //non-windowed case
             if (extension.equals(".lick")) {
                 FileParser.writeDataVesselToFile(output, filename);
             } else if (extension.equals(".ls")) {
-                //resolution scalar seems to affect both reading and writing of Leadsheets, maybe increasing it can improve detection of smaller features
-                FileParser.writeDataVesselToLeadsheet(output, leadsheet.Constants.BEAT / leadsheet.Constants.RESOLUTION_SCALAR, filename);
+                FileParser.writeDataVesselToLeadsheet(output, rowsPerBeat, filename, encoding);
+            }
+            if (metrics[i] != null) {
+                System.out.println(filename + ": " + metrics[i]);
             }
 
 
@@ -0,0 +1,650 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package rbm;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * class ModelFile
+ *
+ * The binary format of a saved MusicBrain.  It loads in about the time it
+ * takes to read the file, where the serialized form (FileParser.writeObject)
+ * is rebuilt object by object, and it leaves out what only lives during
+ * training (the weight change matrices, which are all zeros between
+ * updates) or in the GUI.  FileParser.readBrain reads both.
+ *
+ * All numbers are little-endian.  A bool is one byte, an int[] or long[]
+ * its length (-1 for null) followed by its elements, a string the length
+ * of its UTF-8 bytes followed by them.
+ *
+ *   header, never compressed
+ *     4 bytes      "RBMB"
+ *     int          FORMAT_VERSION
+ *     int          flags: COMPRESSED if the rest of the file is deflated
+ *   brain (MusicBrain.writeModel)
+ *     int          numMelodyRows, numMelodyCols, inputLength, windowLength,
+ *                  stepSize, numEpochs
+ *     bool         learnRhythms, transposeInputs, useWindowing
+ *     float        learningRate
+ *     bool         whether there is a seed, then the seed (long) if so
+ *     int[]        layerSizes
+ *     int          number of training files (-1 for null), then the path
+ *                  of each (string)
+ *     string, int  the training inputs: the hash naming their dataset file
+ *                  (see class DatasetFile; empty if there are none) and
+ *                  their number (-1 if none).  The brain loads them from
+ *                  the file only when it trains again.
+ *   model (LayeredRBM.writeModel)
+ *     int          inputLength, batchSize, trainingThreads, cacheRefreshEpochs
+ *     bool         parallel, hogwild
+ *     float, int, bool, int, string
+ *                  the config: learning rate, final activation mode,
+ *                  generational annealing, visual display mode, note encoding
+ *     bool         whether there is a convergence rule, then its minCycles,
+ *                  tolerance and patience (ints) if so
+ *     bool         whether the config uses the fast logistic function
+ *     int[]        layerSizes
+ *     int          numLayers
+ *     state        the input states (LayerState.writeModel: int size, then
+ *                  the states and the clamps as long[] bit sets)
+ *     per layer    its hidden states (state), float annealingRate and its
+ *                  weights: int rows, int cols, zeros up to the next
+ *                  multiple of 64 bytes, then rows * cols floats, row by row
+ *     int          number of groups of the input layer, then int start,
+ *                  int end and bool oneHot of each
+ *     int[]        the ungrouped input nodes
+ *
+ * A reader must reject versions it does not know; the layout of a version
+ * never changes once released.
+ *
+ * Since the weight blocks of an uncompressed file are aligned raw floats,
+ * they can be mapped instead of read (see read(String, boolean)): the
+ * weights then stay off the heap, and processes generating with the same
+ * brain share one copy of them in the page cache.
+ */
+public final class ModelFile {
+
+    public static final int FORMAT_VERSION = 1;
+
+    // flags
+    public static final int COMPRESSED = 1;
+
+    private static final byte[] MAGIC = {'R', 'B', 'M', 'B'};
+    static final int HEADER_SIZE = 12;
+    static final int BUFFER_SIZE = 1 << 20;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // deflate never shrinks data more than this (1032:1, for long runs of
+    // one byte), which bounds what the rest of a compressed file can hold
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    // the alignment of the weight blocks, counted from the start of the file
+    // (of the inflated stream when compressed)
+    static final int BLOCK_ALIGNMENT = 64;
+
+    private ModelFile() {
+    }
+
+    /**
+     *
+     * @param brain - the brain to save
+     * @param filename - the file to write (replaced if it exists)
+     * @param compress - whether to deflate everything after the header
+     * (smaller files that load more slowly; the weights hardly shrink)
+     *
+     * The brain is written to a temporary file that then replaces the old
+     * one, so that brains mapping the old file (this one included) keep
+     * their weights.
+     */
+    public static void write(MusicBrain brain, String filename, boolean compress) throws IOException {
+        File target = new File(filename).getAbsoluteFile();
+        brain.saveDataset(DatasetFile.getDirectory(target));
+        Path temp = target.toPath().resolveSibling(target.getName() + ".tmp");
+        try {
+            writeFile(brain, temp.toString(), compress);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        replace(temp, target.toPath());
+    }
+
+    // moves a finished file over the one it replaces
+    static void replace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // writes the uncompressed header of a model or dataset file
+    static void writeHeader(WritableByteChannel channel, byte[] magic, int version, int flags) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(magic).putInt(version).putInt(flags);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     *
+     * @param channel - the file, at its start
+     * @param magic - the first four bytes of the kind of file expected
+     * @param version - the version read
+     * @param description - the file and its kind, for errors
+     * @return - the header, whose flags (at 8) are known
+     */
+    static ByteBuffer readHeader(ReadableByteChannel channel, byte[] magic,
+            int version, String description) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header) < 0) {
+                throw new EOFException(description + " is too short");
+            }
+        }
+        header.flip();
+        if (!hasMagic(header, magic)) {
+            throw new IOException(description + " is not one");
+        }
+        int fileVersion = header.getInt(4);
+        int flags = header.getInt(8);
+        if (fileVersion != version) {
+            throw new IOException(description + " has version " + fileVersion
+                    + ", which this program cannot read (it reads version " + version + ")");
+        }
+        if ((flags & ~COMPRESSED) != 0) {
+            throw new IOException(description + " has unknown flags " + flags);
+        }
+        return header;
+    }
+
+    private static void writeFile(MusicBrain brain, String filename, boolean compress) throws IOException {
+        FileOutputStream file = new FileOutputStream(filename);
+        Deflater deflater = null;
+        try {
+            FileChannel channel = file.getChannel();
+            writeHeader(channel, MAGIC, FORMAT_VERSION, compress ? COMPRESSED : 0);
+
+            WritableByteChannel body = channel;
+            if (compress) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+                body = Channels.newChannel(new DeflaterOutputStream(
+                        Channels.newOutputStream(channel), deflater, BUFFER_SIZE));
+            }
+            Output out = new Output(body, HEADER_SIZE);
+            brain.writeModel(out);
+            out.flush();
+            body.close(); // finishes the deflated stream
+        } finally {
+            file.close();
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     *
+     * @param filename - the file to read
+     * @return - the brain saved in it
+     */
+    public static MusicBrain read(String filename) throws IOException {
+        return read(filename, false);
+    }
+
+    /**
+     *
+     * @param filename - the file to read
+     * @param mapWeights - whether to map the weights of the brain read-only
+     * from the file rather than read them onto the heap.  A layer copies its
+     * weights to the heap when it is trained.  The weights of compressed
+     * files are always read.
+     * @return - the brain saved in it
+     */
+    public static MusicBrain read(String filename, boolean mapWeights) throws IOException {
+        FileInputStream file = new FileInputStream(filename);
+        Inflater inflater = null;
+        try {
+            FileChannel channel = file.getChannel();
+            int flags = readHeader(channel, MAGIC, FORMAT_VERSION, "The model file " + filename).getInt(8);
+
+            ReadableByteChannel body = channel;
+            if ((flags & COMPRESSED) != 0) {
+                inflater = new Inflater();
+                body = Channels.newChannel(new InflaterInputStream(
+                        Channels.newInputStream(channel), inflater, BUFFER_SIZE));
+                mapWeights = false;
+            }
+            Input in = new Input(body, HEADER_SIZE, channel, inflater);
+            if (mapWeights) {
+                in.mapFloats = true;
+            }
+            MusicBrain brain = MusicBrain.readModel(in);
+            brain.setDatasetDirectory(DatasetFile.getDirectory(new File(filename).getAbsoluteFile()));
+            return brain;
+        } finally {
+            file.close();
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     *
+     * @param filename - a file
+     * @return - whether the file starts like a model file (if not, it may be
+     * a serialized brain)
+     */
+    public static boolean isModelFile(String filename) {
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(filename));
+            try {
+                byte[] start = new byte[MAGIC.length];
+                in.readFully(start);
+                return hasMagic(ByteBuffer.wrap(start), MAGIC);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean hasMagic(ByteBuffer header, byte[] magic) {
+        for (int i = 0; i < magic.length; i++) {
+            if (header.get(i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * class Output
+     *
+     * Writes the little-endian values of a model file to a channel through
+     * one direct buffer; floats are copied in bulk.  It can also hash what
+     * it writes, with or without a channel.
+     */
+    static final class Output {
+
+        private final WritableByteChannel channel; // null to only hash
+        private final MessageDigest digest;        // null to not hash
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long position; // from the start of the file
+
+        Output(WritableByteChannel channel, long position) {
+            this(channel, position, null);
+        }
+
+        Output(WritableByteChannel channel, long position, MessageDigest digest) {
+            this.channel = channel;
+            this.position = position;
+            this.digest = digest;
+        }
+
+        // makes room for the given number of bytes in the buffer
+        private ByteBuffer room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            position += bytes;
+            return buffer;
+        }
+
+        void writeBoolean(boolean value) throws IOException {
+            room(1).put((byte) (value ? 1 : 0));
+        }
+
+        void writeInt(int value) throws IOException {
+            room(4).putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            room(8).putLong(value);
+        }
+
+        void writeFloat(float value) throws IOException {
+            room(4).putFloat(value);
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(UTF8);
+            writeInt(bytes.length);
+            for (byte b : bytes) {
+                room(1).put(b);
+            }
+        }
+
+        void writeInts(int[] values) throws IOException {
+            writeInt((values == null) ? -1 : values.length);
+            if (values != null) {
+                for (int value : values) {
+                    writeInt(value);
+                }
+            }
+        }
+
+        void writeLongs(long[] values) throws IOException {
+            writeInt((values == null) ? -1 : values.length);
+            if (values != null) {
+                for (long value : values) {
+                    writeLong(value);
+                }
+            }
+        }
+
+        // an int[] of 0s and 1s, packed eight to a byte
+        void writeBits(int[] values) throws IOException {
+            writeInt((values == null) ? -1 : values.length);
+            if (values != null) {
+                for (int i = 0; i < values.length; i += 8) {
+                    int packed = 0;
+                    for (int j = i; j < Math.min(i + 8, values.length); j++) {
+                        if (values[j] != 0 && values[j] != 1) {
+                            throw new IOException("Not a bit: " + values[j]);
+                        }
+                        packed |= values[j] << (j - i);
+                    }
+                    room(1).put((byte) packed);
+                }
+            }
+        }
+
+        // a block of floats (no length), copied in bulk
+        void writeFloats(float[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                int count = Math.min(buffer.remaining() / 4, values.length - offset);
+                if (count == 0) {
+                    flush();
+                    continue;
+                }
+                buffer.asFloatBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * 4);
+                position += count * 4L;
+                offset += count;
+            }
+        }
+
+        // a block of floats (no length) from the position to the limit of values
+        void writeFloats(FloatBuffer values) throws IOException {
+            while (values.hasRemaining()) {
+                int count = Math.min(buffer.remaining() / 4, values.remaining());
+                if (count == 0) {
+                    flush();
+                    continue;
+                }
+                FloatBuffer block = values.duplicate();
+                block.limit(block.position() + count);
+                buffer.asFloatBuffer().put(block);
+                values.position(values.position() + count);
+                buffer.position(buffer.position() + count * 4);
+                position += count * 4L;
+            }
+        }
+
+        // writes zeros up to the next multiple of boundary bytes
+        void align(int boundary) throws IOException {
+            while (position % boundary != 0) {
+                room(1).put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            if (digest != null) {
+                digest.update(buffer.duplicate());
+            }
+            while (channel != null && buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * class Input
+     *
+     * Reads the values written by an Output.  Lengths are checked against
+     * what the rest of the file can hold before anything is allocated, so
+     * a damaged file gives an IOException rather than an OutOfMemoryError.
+     */
+    static final class Input {
+
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long position; // from the start of the file
+        private final FileChannel file; // the file read, maybe through inflater
+        private final Inflater inflater; // null if the file is not compressed
+        private boolean mapFloats; // whether to map float blocks from the file
+
+        /**
+         *
+         * @param channel - the body of the file
+         * @param position - the offset of the body in the file
+         * @param file - the file
+         * @param inflater - the inflater of channel, or null if channel
+         * reads the file directly
+         */
+        Input(ReadableByteChannel channel, long position, FileChannel file, Inflater inflater) {
+            this.channel = channel;
+            this.position = position;
+            this.file = file;
+            this.inflater = inflater;
+            buffer.flip(); // empty
+        }
+
+        // an upper bound on the number of bytes left to read
+        private long available() throws IOException {
+            if (inflater == null) {
+                return file.size() - position;
+            }
+            long compressed = file.size() - file.position() + inflater.getRemaining();
+            return buffer.remaining() + compressed * MAX_DEFLATE_RATIO;
+        }
+
+        // throws unless the rest of the file can hold the given number of bytes
+        private void require(long bytes) throws IOException {
+            if (bytes > available()) {
+                throw new IOException("The model file is damaged: it needs " + bytes
+                        + " more bytes than it has");
+            }
+        }
+
+        // makes sure the given number of bytes are in the buffer
+        private ByteBuffer need(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                buffer.compact();
+                while (buffer.position() < bytes) {
+                    if (channel.read(buffer) < 0) {
+                        throw new EOFException("The model file ends early");
+                    }
+                }
+                buffer.flip();
+            }
+            position += bytes;
+            return buffer;
+        }
+
+        boolean readBoolean() throws IOException {
+            return need(1).get() != 0;
+        }
+
+        int readInt() throws IOException {
+            return need(4).getInt();
+        }
+
+        long readLong() throws IOException {
+            return need(8).getLong();
+        }
+
+        float readFloat() throws IOException {
+            return need(4).getFloat();
+        }
+
+        String readString() throws IOException {
+            byte[] bytes = new byte[readLength(false, 8)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = need(1).get();
+            }
+            return new String(bytes, UTF8);
+        }
+
+        /**
+         *
+         * @param nullable - whether -1 (for null) is allowed
+         * @param minBitsEach - the fewest bits each element takes in the
+         * file (0 to not check)
+         * @return - a length or count written before the elements it counts,
+         * checked against the rest of the file
+         */
+        int readLength(boolean nullable, int minBitsEach) throws IOException {
+            int length = readInt();
+            if (length < (nullable ? -1 : 0)) {
+                throw new IOException("Bad length " + length + " in the model file");
+            }
+            if (length > 0) {
+                require(((long) length * minBitsEach + 7) / 8);
+            }
+            return length;
+        }
+
+        /**
+         *
+         * @param bytes - the size of a block about to be read
+         *
+         * Checks that the rest of the file holds the block
+         */
+        void checkBlock(long bytes) throws IOException {
+            require(bytes);
+        }
+
+        int[] readInts() throws IOException {
+            int length = readLength(true, 32);
+            if (length < 0) {
+                return null;
+            }
+            int[] values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = readInt();
+            }
+            return values;
+        }
+
+        // reads a long[] of exactly the length of values into it
+        void readLongs(long[] values) throws IOException {
+            int length = readLength(false, 64);
+            if (length != values.length) {
+                throw new IOException("Expected " + values.length + " longs in the model file, found " + length);
+            }
+            for (int i = 0; i < length; i++) {
+                values[i] = readLong();
+            }
+        }
+
+        int[] readBits() throws IOException {
+            int length = readLength(true, 1);
+            if (length < 0) {
+                return null;
+            }
+            int[] values = new int[length];
+            for (int i = 0; i < length; i += 8) {
+                int packed = need(1).get();
+                for (int j = i; j < Math.min(i + 8, length); j++) {
+                    values[j] = (packed >>> (j - i)) & 1;
+                }
+            }
+            return values;
+        }
+
+        void readFloats(float[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                int count = Math.min(buffer.remaining() / 4, values.length - offset);
+                if (count == 0) {
+                    need(4);
+                    position -= 4; // counted below
+                    continue;
+                }
+                buffer.asFloatBuffer().get(values, offset, count);
+                buffer.position(buffer.position() + count * 4);
+                position += count * 4L;
+                offset += count;
+            }
+        }
+
+        boolean mapsFloats() {
+            return mapFloats;
+        }
+
+        // maps a block of floats (no length) read-only and skips over it
+        FloatBuffer mapFloats(int count) throws IOException {
+            long bytes = count * 4L;
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IOException("A block of " + count + " floats is too large to map");
+            }
+            if (position + bytes > file.size()) {
+                throw new EOFException("The model file ends early");
+            }
+            FloatBuffer floats = file.map(FileChannel.MapMode.READ_ONLY, position, bytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            if (bytes <= buffer.remaining()) {
+                buffer.position(buffer.position() + (int) bytes);
+            } else {
+                long skipped = bytes - buffer.remaining();
+                buffer.clear();
+                buffer.flip(); // empty
+                file.position(file.position() + skipped);
+            }
+            position += bytes;
+            return floats;
+        }
+
+        // skips the zeros written by Output.align
+        void align(int boundary) throws IOException {
+            while (position % boundary != 0) {
+                need(1).get();
+            }
+        }
+    }
+} // end of class ModelFile
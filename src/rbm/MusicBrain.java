@@ -36,35 +36,73 @@ public class MusicBrain implements Serializable {
     private int numMelodyCols;
     private int inputLength;
     private File[] trainingDataFiles;
-    private DataVessel[] trainingDataVessels;
+    private DataVessel[] trainingDataVessels; // null until needed in loaded brains
+
+    // the hash naming the dataset file of the training inputs (see class
+    // DatasetFile), or null until they are first saved, and their number
+    private String datasetHash;
+    private int numTrainingInputs = -1;
+
+    // where to look for the dataset file of a loaded brain
+    private transient File datasetDirectory;
 
 
     private boolean learnRhythms;
     private boolean transposeInputs;
     private boolean useWindowing;
+    private int windowLength;
     private int stepSize;
 
     private int[] layerSizes;
     private int numEpochs;
     private float learningRate;
 
-    private transient MainFrame owner;
+    // master seed of the samplers, or null for unpredictable runs
+    private Long seed = null;
 
-    public MusicBrain(MainFrame owner) {
-        this.owner = owner;
+    // the sampler the runs of this brain split theirs from, if it is seeded
+    private transient Sampler sampler = null;
 
-        layerSizes = owner.getLayerSizes();
-        numEpochs = owner.getNumEpochs();
-        learningRate = owner.getLearningRate();
+    private transient MainFrame owner;
 
-        transposeInputs = owner.transposeInputs();
-        useWindowing = owner.useWindowing();
-        stepSize = owner.getStepSize();
+    // told about training progress when there is no owner to update
+    private transient TrainingListener[] trainingListeners = new TrainingListener[0];
 
-        trainingDataFiles = owner.getTrainingData();
+    public MusicBrain(MainFrame owner) {
+        this(owner.getTrainingData(), owner.getLayerSizes(), owner.getNumEpochs(),
+                owner.getConfig(), owner.transposeInputs(), owner.useWindowing(),
+                owner.useWindowing() ? owner.getWindowLength() : 0, owner.getStepSize());
+        this.owner = owner;
+    }
 
-        setupLRBM();
+    /**
+     *
+     * @param trainingDataFiles - the .ls or .lick files to train on
+     * @param layerSizes - the number of hidden nodes in each layer
+     * @param numEpochs - the number of epochs to train each layer for
+     * @param config - the settings of the brain (learning rate, note encoding
+     * of the training data, ...)
+     * @param transposeInputs - whether to add every transposition of the inputs
+     * @param useWindowing - whether to cut the inputs into windows
+     * @param windowLength - the length of a window, in rows
+     * @param stepSize - the number of rows between the starts of two windows
+     *
+     * Creates a brain without a MainFrame, e.g. for the BatchRunner.  Progress
+     * is reported to the listeners given to setTrainingListeners.
+     */
+    public MusicBrain(File[] trainingDataFiles, int[] layerSizes, int numEpochs,
+            RbmConfig config, boolean transposeInputs, boolean useWindowing,
+            int windowLength, int stepSize) {
+        this.trainingDataFiles = trainingDataFiles;
+        this.layerSizes = layerSizes;
+        this.numEpochs = numEpochs;
+        this.learningRate = config.getLearningRate();
+        this.transposeInputs = transposeInputs;
+        this.useWindowing = useWindowing;
+        this.windowLength = windowLength;
+        this.stepSize = stepSize;
 
+        setupLRBM(config);
     }
 
     //Used for loading a brain
@@ -72,30 +110,90 @@ public class MusicBrain implements Serializable {
         this.owner = owner;
     }
 
-    public void setupLRBM() {
+    /**
+     *
+     * @param listeners - the listeners to tell about training progress when
+     * the brain has no MainFrame owner
+     */
+    public void setTrainingListeners(TrainingListener... listeners) {
+        this.trainingListeners = listeners.clone();
+    }
 
-        trainingDataVessels = FileParser.parseAllFiles(trainingDataFiles);
+    private TrainingListener[] getTrainingListeners() {
+        if (owner != null) {
+            return new TrainingListener[] {owner.getTrainingProgressBars(), owner.getEnergyDisplay()};
+        }
+        return trainingListeners;
+    }
+
+    private DataVessel[] parseTrainingData(RbmConfig config) {
+        DataVessel[] inputs = FileParser.parseAllFiles(trainingDataFiles, config.getNoteEncoding());
         if (transposeInputs) {
-            trainingDataVessels = FileParser.transposeDataVessels(trainingDataVessels);
+            inputs = FileParser.transposeDataVessels(inputs);
         }
         if (useWindowing) {
-            trainingDataVessels = FileParser.parseDataVesselsToWindows(trainingDataVessels, owner.getWindowLength(), stepSize);
+            inputs = FileParser.parseDataVesselsToWindows(inputs, windowLength, stepSize);
         }
+        return inputs;
+    }
+
+    public void setupLRBM(RbmConfig config) {
+
+        trainingDataVessels = parseTrainingData(config);
+        datasetHash = null;
+        numTrainingInputs = trainingDataVessels.length;
         
         numMelodyRows = trainingDataVessels[0].getNumRows();
         numMelodyCols = trainingDataVessels[0].getNumCols();
         inputLength = trainingDataVessels[0].getLength();
-        lrbm = new LayeredRBM(inputLength, numMelodyRows, numMelodyCols, layerSizes);
+        lrbm = new LayeredRBM(inputLength, numMelodyRows, numMelodyCols, layerSizes, config);
 
     }
     
     public void resetToFirstLayer()
     {
-        int[] layerResetSizes = {layerSizes[0]};
-        lrbm = new LayeredRBM(inputLength, numMelodyRows, numMelodyCols, layerResetSizes);
+        resetLayers(new int[] {layerSizes[0]});
+    }
+
+    /*
+     * Gives every layer new random weights, drawn from a sampler of this
+     * brain's (so a seeded brain starts training from the same weights)
+     */
+    public void resetWeights()
+    {
+        resetLayers(layerSizes);
+    }
+
+    private void resetLayers(int[] layerResetSizes)
+    {
+        Sampler previous = Sampler.setForThread(newSampler()); // for the new weights
+        try {
+            int batchSize = lrbm.getBatchSize();
+            boolean parallel = lrbm.isParallel();
+            int trainingThreads = lrbm.getTrainingThreads();
+            boolean hogwild = lrbm.isHogwild();
+            int cacheRefreshEpochs = lrbm.getCacheRefreshEpochs();
+            lrbm = new LayeredRBM(inputLength, numMelodyRows, numMelodyCols, layerResetSizes, lrbm.getConfig());
+            lrbm.setBatchSize(batchSize);
+            lrbm.setParallel(parallel);
+            lrbm.setTrainingThreads(trainingThreads);
+            lrbm.setHogwild(hogwild);
+            lrbm.setCacheRefreshEpochs(cacheRefreshEpochs);
+        } finally {
+            Sampler.setForThread(previous);
+        }
     }
 
     public void addLayerToBrain(int newLayerSize) throws InterruptedException{
+        Sampler previous = Sampler.setForThread(newSampler());
+        try {
+            addLayer(newLayerSize);
+        } finally {
+            Sampler.setForThread(previous);
+        }
+    }
+
+    private void addLayer(int newLayerSize) throws InterruptedException{
         RBM[] currLayers = lrbm.layers;
         int[] currLayerSizes = lrbm.layerSizes;
 
@@ -106,6 +204,8 @@ public class MusicBrain implements Serializable {
         System.arraycopy(currLayerSizes, 0, newLayerSizes, 0, currLayerSizes.length);
 
         newLayers[newLayers.length - 1] = new RBM(currLayers[currLayers.length - 1].getHidden(), newLayerSize);
+        newLayers[newLayers.length - 1].setParallel(lrbm.isParallel());
+        newLayers[newLayers.length - 1].setConfig(lrbm.getConfig());
         newLayerSizes[newLayerSizes.length - 1] = newLayerSize;
 
         lrbm.numLayers++;
@@ -113,17 +213,88 @@ public class MusicBrain implements Serializable {
         this.layerSizes = newLayerSizes;
         lrbm.layers = newLayers;
 
-        lrbm.layeredLearn(trainingDataVessels, numEpochs, lrbm.numLayers-1, owner.getTrainingProgressBars(), owner.getEnergyDisplay());
+        lrbm.layeredLearn(getTrainingDataVessels(), numEpochs, lrbm.numLayers-1, getTrainingListeners());
 
     }
     
+    /*
+     * Trains on the calling thread, which (like the training workers split
+     * from it) draws from a sampler of this brain's for the whole run
+     */
     public void train(int startingLayer) throws InterruptedException
     {
-        lrbm.layeredLearn(trainingDataVessels, numEpochs, startingLayer, owner.getTrainingProgressBars(), owner.getEnergyDisplay());
+        Sampler previous = Sampler.setForThread(newSampler());
+        try {
+            lrbm.layeredLearn(getTrainingDataVessels(), numEpochs, startingLayer, getTrainingListeners());
+        } finally {
+            Sampler.setForThread(previous);
+        }
     }
 
     public void train() throws InterruptedException {
-        lrbm.layeredLearn(trainingDataVessels, numEpochs, 0, owner.getTrainingProgressBars(), owner.getEnergyDisplay());
+        train(0);
+    }
+
+    /*
+     * The training inputs of a loaded brain are read from its dataset file
+     * the first time it trains.  If the file cannot be found they are parsed
+     * again from the training files, which must still give the same inputs.
+     */
+    private DataVessel[] getTrainingDataVessels() {
+        if (trainingDataVessels == null && datasetHash != null) {
+            trainingDataVessels = loadDataset();
+        }
+        return trainingDataVessels;
+    }
+
+    private DataVessel[] loadDataset() {
+        if (datasetDirectory != null && DatasetFile.getFile(datasetDirectory, datasetHash).isFile()) {
+            try {
+                return DatasetFile.read(datasetDirectory, datasetHash);
+            } catch (IOException e) {
+                e.printStackTrace(); // parse the training files instead
+            }
+        }
+        DataVessel[] inputs = null;
+        try {
+            inputs = parseTrainingData(getConfig());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        if (inputs == null || !DatasetFile.hash(inputs).equals(datasetHash)) {
+            throw new IllegalStateException("The training data of this brain (dataset " + datasetHash
+                    + ") is missing, and its training files no longer give the same inputs");
+        }
+        return inputs;
+    }
+
+    /**
+     *
+     * @param directory - the dataset directory of the file this brain is
+     * being saved to
+     *
+     * Saves the training inputs there, unless they already are
+     */
+    void saveDataset(File directory) throws IOException {
+        if (datasetHash == null) {
+            if (trainingDataVessels == null) {
+                return;
+            }
+            datasetHash = DatasetFile.hash(trainingDataVessels);
+            numTrainingInputs = trainingDataVessels.length;
+        }
+        if (!DatasetFile.getFile(directory, datasetHash).isFile()) {
+            DatasetFile.write(getTrainingDataVessels(), datasetHash, directory);
+        }
+    }
+
+    /**
+     *
+     * @param directory - where to look for the dataset file of this brain
+     * when it trains
+     */
+    void setDatasetDirectory(File directory) {
+        this.datasetDirectory = directory;
     }
 
     public int getNumMelodyRows() {
@@ -155,10 +326,189 @@ public class MusicBrain implements Serializable {
         this.numEpochs = numEpochs;
     }
 
+    public int getBatchSize() {
+        return lrbm.getBatchSize();
+    }
+
+    public void setBatchSize(int batchSize) {
+        lrbm.setBatchSize(batchSize);
+    }
+
+    public boolean isParallel() {
+        return lrbm.isParallel();
+    }
+
+    public void setParallel(boolean parallel) {
+        lrbm.setParallel(parallel);
+    }
+
+    public int getTrainingThreads() {
+        return lrbm.getTrainingThreads();
+    }
+
+    public void setTrainingThreads(int trainingThreads) {
+        lrbm.setTrainingThreads(trainingThreads);
+    }
+
+    public boolean isHogwild() {
+        return lrbm.isHogwild();
+    }
+
+    public void setHogwild(boolean hogwild) {
+        lrbm.setHogwild(hogwild);
+    }
+
+    public int getCacheRefreshEpochs() {
+        return lrbm.getCacheRefreshEpochs();
+    }
+
+    public void setCacheRefreshEpochs(int cacheRefreshEpochs) {
+        lrbm.setCacheRefreshEpochs(cacheRefreshEpochs);
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     *
+     * @param seed - the master seed for sampling, or null for none
+     *
+     * Seeds the samplers of the training and generation runs of this brain
+     * (see newSampler), now and again whenever the brain is loaded, so the
+     * same sequence of training and generation calls gives the same results.
+     * The samplers of other brains and threads are left alone.  Call
+     * resetWeights() afterwards to also reproduce the initial weights.
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+        sampler = (seed == null) ? null : Sampler.create(seed);
+    }
+
+    /**
+     *
+     * @return - a sampler for one run of training or generation (or for the
+     * random seed of a generation), split from the seeded sampler of this
+     * brain, or from that of the calling thread if the brain has no seed
+     */
+    public synchronized Sampler newSampler() {
+        return (sampler != null) ? sampler.split() : Sampler.forThread().split();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        trainingListeners = new TrainingListener[0];
+        // brains saved before RbmConfig only know their learning rate here
+        if (learningRate > 0 && lrbm.getConfig().getLearningRate() != learningRate) {
+            lrbm.setConfig(lrbm.getConfig().withLearningRate(learningRate));
+        }
+        setSeed(seed);
+    }
+
+    // for readModel
+    private MusicBrain() {
+    }
+
+    /**
+     *
+     * @param out - the model file being written
+     *
+     * Writes the settings, training data and model of this brain (see class
+     * ModelFile)
+     */
+    void writeModel(ModelFile.Output out) throws IOException {
+        out.writeInt(numMelodyRows);
+        out.writeInt(numMelodyCols);
+        out.writeInt(inputLength);
+        out.writeInt(windowLength);
+        out.writeInt(stepSize);
+        out.writeInt(numEpochs);
+        out.writeBoolean(learnRhythms);
+        out.writeBoolean(transposeInputs);
+        out.writeBoolean(useWindowing);
+        out.writeFloat(learningRate);
+        out.writeBoolean(seed != null);
+        if (seed != null) {
+            out.writeLong(seed);
+        }
+        out.writeInts(layerSizes);
+
+        out.writeInt((trainingDataFiles == null) ? -1 : trainingDataFiles.length);
+        if (trainingDataFiles != null) {
+            for (File file : trainingDataFiles) {
+                out.writeString(file.getPath());
+            }
+        }
+        // the inputs themselves are saved by saveDataset
+        out.writeString((datasetHash == null) ? "" : datasetHash);
+        out.writeInt((datasetHash == null) ? -1 : numTrainingInputs);
+
+        lrbm.writeModel(out);
+    }
+
+    /**
+     *
+     * @param in - the model file being read
+     * @return - the brain written by writeModel, with its seed applied as
+     * when a serialized brain is read.  Its training inputs are loaded when
+     * it trains.
+     */
+    static MusicBrain readModel(ModelFile.Input in) throws IOException {
+        MusicBrain brain = new MusicBrain();
+        brain.numMelodyRows = in.readInt();
+        brain.numMelodyCols = in.readInt();
+        brain.inputLength = in.readInt();
+        brain.windowLength = in.readInt();
+        brain.stepSize = in.readInt();
+        brain.numEpochs = in.readInt();
+        brain.learnRhythms = in.readBoolean();
+        brain.transposeInputs = in.readBoolean();
+        brain.useWindowing = in.readBoolean();
+        brain.learningRate = in.readFloat();
+        if (in.readBoolean()) {
+            brain.seed = in.readLong();
+        }
+        brain.layerSizes = in.readInts();
+
+        int numFiles = in.readLength(true, 32);
+        if (numFiles >= 0) {
+            brain.trainingDataFiles = new File[numFiles];
+            for (int i = 0; i < numFiles; i++) {
+                brain.trainingDataFiles[i] = new File(in.readString());
+            }
+        }
+        String hash = in.readString();
+        brain.datasetHash = hash.isEmpty() ? null : hash;
+        brain.numTrainingInputs = in.readInt();
+
+        brain.lrbm = LayeredRBM.readModel(in);
+        brain.setSeed(brain.seed);
+        return brain;
+    }
+
     public float getLearningRate() {
         return learningRate;
     }
 
+    public RbmConfig getConfig() {
+        return lrbm.getConfig();
+    }
+
+    /**
+     *
+     * @param config - the new settings of the brain, e.g. the current
+     * generation settings of the GUI.  The note encoding must stay the one
+     * the brain was trained with.
+     */
+    public void setConfig(RbmConfig config) {
+        if (config.getNoteEncoding() != lrbm.getConfig().getNoteEncoding()) {
+            throw new IllegalArgumentException("A brain trained with " + lrbm.getConfig().getNoteEncoding()
+                    + " cannot use " + config.getNoteEncoding());
+        }
+        lrbm.setConfig(config);
+        learningRate = config.getLearningRate();
+    }
+
     public boolean getTransposeInputs() {
         return transposeInputs;
     }
@@ -175,61 +525,181 @@ public class MusicBrain implements Serializable {
         return trainingDataFiles;
     }
 
+    /*
+     * The clamps of a generation belong to its own GibbsChain, so several
+     * generations may run on one brain at once (with the visual display off).
+     */
     public DataVessel generate(DataVessel generationSeed, int numGenerationCycles) {
-        lrbm.clamp(numMelodyRows*numMelodyCols, lrbm.getInputLength());
-        DataVessel toReturn = lrbm.layeredGenerate(generationSeed, numGenerationCycles);
-        lrbm.unclamp(numMelodyRows*numMelodyCols, lrbm.getInputLength());
-        return toReturn;
+        GibbsChain chain = new GibbsChain(lrbm, newSampler());
+        chain.clamp(numMelodyRows*numMelodyCols, lrbm.getInputLength());
+        return lrbm.layeredGenerate(chain, generationSeed, numGenerationCycles);
+    }
+
+    /*
+     * Generates numOutputs melodies over the chords of generationSeed, each
+     * on its own chain started from its own copy of the seed (which is left
+     * alone).  The chains are sampled together in one batch when the visual
+     * display is off.
+     */
+    public DataVessel[] generate(DataVessel generationSeed, int numOutputs, int numGenerationCycles) {
+        return generate(generationSeed, numOutputs, numGenerationCycles, null);
+    }
+
+    /*
+     * generate that stores the cycles used by output i in metrics[i]
+     * (metrics may be null)
+     */
+    public DataVessel[] generate(DataVessel generationSeed, int numOutputs, int numGenerationCycles,
+            GenerationMetrics[] metrics) {
+        Sampler rand = newSampler();
+        DataVessel[] outputs = new DataVessel[numOutputs];
+        GibbsChain[] chains = new GibbsChain[numOutputs];
+        for (int i = 0; i < numOutputs; i++) {
+            outputs[i] = new DataVessel(generationSeed);
+            chains[i] = new GibbsChain(lrbm, rand.split());
+            chains[i].clamp(numMelodyRows*numMelodyCols, lrbm.getInputLength());
+        }
+        for (int i = 0; metrics != null && i < numOutputs; i++) {
+            metrics[i] = chains[i].getMetrics();
+        }
+        return lrbm.layeredGenerate(chains, outputs, numGenerationCycles);
     }
+
+    /*
+     * Generates numOutputs melodies over the chords of generationSeed from
+     * one chain, which burns in for numGenerationCycles cycles and then gives
+     * an output every thinning cycles.  Far fewer cycles than generate with
+     * numOutputs, but the outputs are less independent of each other.
+     */
+    public DataVessel[] generateThinned(DataVessel generationSeed, int numOutputs,
+            int numGenerationCycles, int thinning) {
+        return generateThinned(generationSeed, numOutputs, numGenerationCycles, thinning, null);
+    }
+
+    /*
+     * generateThinned that adds the cycles used to metrics (which may be
+     * null); the outputs all share the one run of their chain, so there is
+     * one entry for the whole draw rather than one per output
+     */
+    public DataVessel[] generateThinned(DataVessel generationSeed, int numOutputs,
+            int numGenerationCycles, int thinning, GenerationMetrics metrics) {
+        GibbsChain chain = new GibbsChain(lrbm, newSampler());
+        chain.clamp(numMelodyRows*numMelodyCols, lrbm.getInputLength());
+        DataVessel[] outputs = lrbm.layeredSample(chain, generationSeed, numOutputs, numGenerationCycles, thinning);
+        if (metrics != null) {
+            metrics.add(chain.getMetrics());
+        }
+        return outputs;
+    }
+
     //somewhat sure this method creates sections of a long melody from the base size
-    private DataVessel windowedGenerate(DataVessel chordSeed, int numCycles, int stepSize) {
+    //(the first window runs numCycles cycles and every later one
+    //numWindowCycles; a later window starts from the melody of the window
+    //before, shifted by stepSize rows, with only its new rows random, and its
+    //hidden layers are sampled anew from that in its first cycle); each finished
+    //section is passed on to listener, if there is one, and the cycles used
+    //are added to metrics, if given; the chain and the random rows draw from rand
+    private DataVessel windowedGenerate(DataVessel chordSeed, int numCycles, int numWindowCycles, int stepSize,
+            GenerationListener listener, GenerationMetrics metrics, Sampler rand) {
         int[][] output = new int[(chordSeed.getChordsSize()/Encoding.NUM_CHORD_COLUMNS)/stepSize][stepSize*numMelodyCols];
-        lrbm.clamp(numMelodyRows*numMelodyCols, lrbm.getInputLength()); //Clamp chord bits
+        GibbsChain chain = new GibbsChain(lrbm, rand.split());
+        chain.clamp(numMelodyRows*numMelodyCols, lrbm.getInputLength()); //Clamp chord bits
 
 
         int numFirstGenerations = (numMelodyRows/stepSize) - 1;
         int[] chordWindow = new int[numMelodyRows*Encoding.NUM_CHORD_COLUMNS];
         System.arraycopy(chordSeed.getChords(), 0, chordWindow, 0, chordWindow.length);
 
-        DataVessel seed = DataGenerator.chordData(numMelodyRows*numMelodyCols, chordWindow);
+        DataVessel seed = DataGenerator.chordData(numMelodyRows*numMelodyCols, chordWindow, rand);
 
         for (int i = 0; i < numFirstGenerations; i++) {
-            seed = lrbm.layeredGenerate(seed, numCycles);
-            lrbm.clamp(i*numMelodyCols*stepSize, (i+1)*numMelodyCols*stepSize);
+            seed = lrbm.layeredGenerate(chain, seed, (i == 0) ? numCycles : numWindowCycles);
+            chain.clamp(i*numMelodyCols*stepSize, (i+1)*numMelodyCols*stepSize);
             System.arraycopy(seed.getMelody(), i*numMelodyCols*stepSize, output[i], 0, output[i].length);
+            publishSection(listener, chordSeed, output, i, stepSize);
         }
 
-        seed = lrbm.layeredGenerate(seed, numCycles);
+        seed = lrbm.layeredGenerate(chain, seed, (numFirstGenerations == 0) ? numCycles : numWindowCycles);
         System.arraycopy(seed.getMelody(), numFirstGenerations*numMelodyCols*stepSize,
                 output[numFirstGenerations], 0, output[numFirstGenerations].length);
+        publishSection(listener, chordSeed, output, numFirstGenerations, stepSize);
 
         for (int i = numFirstGenerations + 1; i < output.length; i++) {
             System.arraycopy(seed.getMelody(), numMelodyCols*stepSize,
                     seed.getMelody(), 0, (numMelodyRows-stepSize)*numMelodyCols); //Shift melody over
-            int[] randData = DataGenerator.randomData(numMelodyCols*stepSize);
+            int[] randData = DataGenerator.randomData(numMelodyCols*stepSize, rand);
             System.arraycopy(randData, 0, seed.getMelody(),
                     (numMelodyRows-stepSize)*numMelodyCols, randData.length); //Get random part of melody seed
 
             System.arraycopy(chordSeed.getChords(), (i-numFirstGenerations)*Encoding.NUM_CHORD_COLUMNS*stepSize,
                     seed.getChords(), 0, numMelodyRows*Encoding.NUM_CHORD_COLUMNS); //Shifting chords
 
-            seed = lrbm.layeredGenerate(seed, numCycles);
+            seed = lrbm.layeredGenerate(chain, seed, numWindowCycles);
             System.arraycopy(seed.getMelody(), numFirstGenerations*numMelodyCols*stepSize,
                     output[i], 0, output[i].length);
+            publishSection(listener, chordSeed, output, i, stepSize);
         }
 
 
-        lrbm.unclamp(0, (numMelodyRows-stepSize)*numMelodyCols);
-
         for (int i = 0; i < output.length; i++) {
             System.arraycopy(output[i], 0, chordSeed.getMelody(), i*output[0].length, output[i].length);
         }
+        if (metrics != null) {
+            metrics.add(chain.getMetrics());
+        }
 
         return chordSeed;
 
     }
 
+    // passes section i of a windowed generation, with its chords, to listener
+    private void publishSection(GenerationListener listener, DataVessel chordSeed, int[][] output,
+            int i, int stepSize) {
+        if (listener == null) {
+            return;
+        }
+        int[] chords = new int[stepSize*Encoding.NUM_CHORD_COLUMNS];
+        System.arraycopy(chordSeed.getChords(), i*chords.length, chords, 0, chords.length);
+        listener.rowsGenerated(new DataVessel(output[i].clone(), chords, stepSize, numMelodyCols), i*stepSize);
+    }
+
     public DataVessel loopingWindowedGenerate(DataVessel chordSeed, int numCycles, int stepSize, int outputRows)
+    {
+        return loopingWindowedGenerate(chordSeed, numCycles, numCycles, stepSize, outputRows);
+    }
+
+    /*
+     * The number of rows a windowed generation of outputRows rows passes to
+     * its GenerationListener (the whole sections of stepSize rows)
+     */
+    public static int getNumWindowedRows(int outputRows, int stepSize) {
+        return (outputRows/stepSize)*stepSize;
+    }
+
+    public DataVessel loopingWindowedGenerate(DataVessel chordSeed, int numCycles, int numWindowCycles,
+            int stepSize, int outputRows)
+    {
+        return loopingWindowedGenerate(chordSeed, numCycles, numWindowCycles, stepSize, outputRows, null);
+    }
+
+    /*
+     * loopingWindowedGenerate that passes every section of stepSize rows to
+     * listener as soon as it is final, so that the start of a long melody
+     * can be used (or written, see FileParser.openMelodyWriter) after the
+     * first window instead of the last
+     */
+    public DataVessel loopingWindowedGenerate(DataVessel chordSeed, int numCycles, int numWindowCycles,
+            int stepSize, int outputRows, GenerationListener listener)
+    {
+        return loopingWindowedGenerate(chordSeed, numCycles, numWindowCycles, stepSize, outputRows, listener, null);
+    }
+
+    /*
+     * loopingWindowedGenerate that adds the cycles used (one run per window)
+     * to metrics
+     */
+    public DataVessel loopingWindowedGenerate(DataVessel chordSeed, int numCycles, int numWindowCycles,
+            int stepSize, int outputRows, GenerationListener listener, GenerationMetrics metrics)
     {
         int[] chords = chordSeed.getChords();
         int chordLength = chords.length;
@@ -240,9 +710,10 @@ public class MusicBrain implements Serializable {
         System.arraycopy(chords, 0, loopedChord, (loopedChord.length/chordLength)*chordLength, loopedChord.length%chordLength);
 
         //this data vessel WILL have chords filled to represent up until the desired length specified in new melody size
-        DataVessel loopedChordSeed = DataGenerator.chordData(outputRows*numMelodyCols, loopedChord);
+        Sampler rand = newSampler();
+        DataVessel loopedChordSeed = DataGenerator.chordData(outputRows*numMelodyCols, loopedChord, rand);
 
-        return windowedGenerate(loopedChordSeed, numCycles, stepSize);
+        return windowedGenerate(loopedChordSeed, numCycles, numWindowCycles, stepSize, listener, metrics, rand);
     }
 
     public void resetVisFrame() {
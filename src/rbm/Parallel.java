@@ -0,0 +1,109 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * class Parallel
+ *
+ * Splits loops over independent nodes across a ForkJoinPool shared by every
+ * RBM.  Within one half-step of Gibbs sampling each node only depends on the
+ * other layer, so ranges of nodes can be computed on different threads.
+ */
+public class Parallel {
+
+    private static ForkJoinPool pool = null;
+
+    /**
+     * A loop body over the index range [start, end)
+     */
+    public interface RangeKernel {
+        void compute(int start, int end);
+    }
+
+    /**
+     *
+     * @return - the pool shared by all parallel kernels
+     */
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+
+    /**
+     *
+     * @param start - the first index, inclusive
+     * @param end - the last index, exclusive
+     * @param workPerIndex - a rough count of the multiply-adds done per index
+     * @param kernel - the loop body
+     *
+     * Runs kernel over [start, end), split into pieces across the shared
+     * pool.  Loops with less than Params.MIN_PARALLEL_WORK total work are
+     * run serially on the calling thread.
+     */
+    public static void forRange(int start, int end, int workPerIndex, RangeKernel kernel) {
+        long work = (long) (end - start) * Math.max(1, workPerIndex);
+        int threads = getPool().getParallelism();
+        if (work < Params.MIN_PARALLEL_WORK || threads == 1 || end - start < 2) {
+            kernel.compute(start, end);
+            return;
+        }
+
+        // a few pieces per thread for balance, but none below the threshold
+        int minPiece = Math.max(1, Params.MIN_PARALLEL_WORK / Math.max(1, workPerIndex));
+        int piece = Math.max(minPiece, (end - start) / (4 * threads));
+        getPool().invoke(new RangeTask(kernel, start, end, piece));
+    }
+
+    private static class RangeTask extends RecursiveAction {
+
+        static final long serialVersionUID = 1L;
+
+        private final RangeKernel kernel;
+        private final int start;
+        private final int end;
+        private final int piece;
+
+        RangeTask(RangeKernel kernel, int start, int end, int piece) {
+            this.kernel = kernel;
+            this.start = start;
+            this.end = end;
+            this.piece = piece;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= piece) {
+                kernel.compute(start, end);
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RangeTask(kernel, start, middle, piece),
+                          new RangeTask(kernel, middle, end, piece));
+            }
+        }
+    }
+} // end of class Parallel
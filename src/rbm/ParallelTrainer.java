@@ -0,0 +1,311 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * class ParallelTrainer
+ *
+ * Trains one layer of a LayeredRBM with several worker threads, each taking
+ * a contiguous share of the inputs: one mini-batch per worker per call of
+ * train() (see getChunkSize), so every thread has work even with a batch
+ * size of 1.  Workers never touch the node arrays of
+ * the layers: every worker propagates its own inputs up to the layer being
+ * trained in its own buffers, using only the (read-only) weights below it.
+ *
+ * In the default mode each worker adds its statistics to its own weight
+ * change matrices.  The matrices are then summed pairwise in a fixed tree
+ * (worker 0 + 1, 2 + 3, ..., then 0 + 2, ...), so the result does not depend
+ * on which worker finishes first, and handed to the layer for a single
+ * updateWeights.  One weight update thus covers a mini-batch from every
+ * worker, batchSize * numWorkers inputs in all.
+ *
+ * In Hogwild mode workers keep no change matrices at all; each one writes its
+ * weight changes straight into the layer's flat weight array after every
+ * mini-batch of its share, without locking.  Concurrent writes to the same
+ * weight can occasionally lose an update, which in practice costs little
+ * since the updates are sparse and small.
+ */
+public class ParallelTrainer {
+
+    private final Worker[] workers;
+    private final boolean hogwild;
+
+    /**
+     *
+     * @param numWorkers - the number of worker threads (at least 1)
+     * @param hogwild - whether workers write to the shared weights directly
+     */
+    public ParallelTrainer(int numWorkers, boolean hogwild) {
+        this.workers = new Worker[Math.max(1, numWorkers)];
+        this.hogwild = hogwild;
+        // split in worker order, so a seeded caller gives seeded workers
+        Sampler parent = Sampler.forThread();
+        for (int w = 0; w < workers.length; ++w) {
+            workers[w] = new Worker(parent.split());
+        }
+    }
+
+    /**
+     *
+     * @return - the number of worker threads
+     */
+    public int getNumWorkers() {
+        return workers.length;
+    }
+
+    /**
+     *
+     * @return - whether workers write to the shared weights directly
+     */
+    public boolean isHogwild() {
+        return hogwild;
+    }
+
+    /**
+     *
+     * @param batchSize - the mini-batch size of the LayeredRBM
+     * @return - the number of inputs to pass to each call of train()
+     *
+     * A call hands every worker one mini-batch.  With gradient reduction the
+     * mini-batches of all the workers are summed into one weight update; in
+     * Hogwild mode each worker updates after its own.
+     */
+    public int getChunkSize(int batchSize) {
+        return batchSize * workers.length;
+    }
+
+    /**
+     *
+     * @param layers - the layers of the LayeredRBM
+     * @param layer - the index of the layer being trained
+     * @param inputs - the training inputs
+     * @param from - the first input of this chunk, inclusive
+     * @param to - the last input of this chunk, exclusive
+     * @param batchSize - the mini-batch size of each worker in Hogwild mode
+     * @param numInputs - the total number of inputs (weight changes are
+     * divided by this, as in RBM.updateWeights)
+     * @param representations - the cached visible states of layers[layer]
+     * for every input, or null to propagate the inputs through the layers
+     * below
+     *
+     * Trains layers[layer] on inputs[from, to).  With gradient reduction the
+     * summed statistics are left in the layer's own change matrices for the
+     * caller to apply with updateWeights; in Hogwild mode the weights have
+     * already been changed when this returns.
+     */
+    public void train(final RBM[] layers, final int layer, final DataVessel[] inputs,
+                      int from, int to, final int batchSize, final int numInputs,
+                      final LayerState[] representations)
+            throws InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        int share = (to - from + workers.length - 1) / workers.length;
+        for (int w = 0; w < workers.length; ++w) {
+            final Worker worker = workers[w];
+            final int start = from + w * share;
+            final int end = Math.min(to, start + share);
+            if (start >= end) {
+                break;
+            }
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    if (hogwild) {
+                        worker.trainHogwild(layers, layer, inputs, representations, start, end, batchSize, numInputs);
+                    } else {
+                        worker.accumulate(layers, layer, inputs, representations, start, end);
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+
+        if (!hogwild) {
+            reduce(tasks.size());
+            workers[0].addTo(layers[layer]);
+        }
+    }
+
+    /*
+     * Method: reduce
+     *
+     * Sums the change matrices of the first numUsed workers into worker 0 by
+     * a pairwise tree.  The pairs at each level are independent, so they are
+     * run on the pool too.
+     */
+    private void reduce(int numUsed) throws InterruptedException {
+        for (int stride = 1; stride < numUsed; stride *= 2) {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int w = 0; w + stride < numUsed; w += 2 * stride) {
+                final Worker target = workers[w];
+                final Worker source = workers[w + stride];
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        target.addFrom(source);
+                        return null;
+                    }
+                });
+            }
+            runAll(tasks);
+        }
+    }
+
+    private static void runAll(List<Callable<Void>> tasks) throws InterruptedException {
+        if (tasks.size() == 1) {
+            try {
+                tasks.get(0).call();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+        for (Future<Void> future : Parallel.getPool().invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    /*
+     * The buffers of one worker thread.  The change matrices are only
+     * allocated in gradient reduction mode, and reallocated when the worker
+     * moves on to a layer of a different shape.
+     */
+    private static class Worker {
+
+        private final Sampler rand;
+        private WeightMatrix dPos = null;
+        private WeightMatrix dNeg = null;
+        private ActiveSet dirtyRows = null;
+
+        Worker(Sampler rand) {
+            this.rand = rand;
+        }
+
+        /*
+         * Method: propagate
+         *
+         * Returns the visible states of layers[layer] for inputs[start, end),
+         * found by sampling the hidden nodes of every layer below it in turn
+         * unless they are cached.
+         */
+        private int[][] propagate(RBM[] layers, int layer, DataVessel[] inputs,
+                                  LayerState[] representations, int start, int end) {
+            int length = end - start;
+            if (representations != null) {
+                int[][] rows = new int[length][];
+                for (int b = 0; b < length; ++b) {
+                    rows[b] = representations[start + b].toArray();
+                }
+                return rows;
+            }
+
+            int numRows = layers[0].getWeights().getNumRows();
+            int[][] rows = new int[length][numRows];
+            for (int b = 0; b < length; ++b) {
+                int[] data = inputs[start + b].getData();
+                System.arraycopy(data, 0, rows[b], 0, data.length);
+                rows[b][numRows - 1] = 1;
+            }
+            for (int l = 0; l < layer; ++l) {
+                int[][] hidden = new int[length][layers[l].getWeights().getNumCols()];
+                layers[l].activateHiddenBatch(rows, hidden, length, rand);
+                rows = hidden;
+            }
+            return rows;
+        }
+
+        private void accumulate(RBM[] layers, int layer, DataVessel[] inputs,
+                                LayerState[] representations, int start, int end) {
+            RBM rbm = layers[layer];
+            WeightMatrix weights = rbm.getWeights();
+            if (dPos == null || dPos.getNumRows() != weights.getNumRows()
+                    || dPos.getNumCols() != weights.getNumCols()) {
+                dPos = new WeightMatrix(weights.getNumRows(), weights.getNumCols());
+                dNeg = new WeightMatrix(weights.getNumRows(), weights.getNumCols());
+                dirtyRows = new ActiveSet(weights.getNumRows());
+            }
+
+            int[][] batch = propagate(layers, layer, inputs, representations, start, end);
+            rbm.contrastiveDivergence(batch, end - start, Params.NUM_TRAINING_CYCLES,
+                    dPos, 1f, dNeg, 1f, dirtyRows, rand);
+        }
+
+        private void trainHogwild(RBM[] layers, int layer, DataVessel[] inputs,
+                                  LayerState[] representations,
+                                  int start, int end, int batchSize, int numInputs) {
+            RBM rbm = layers[layer];
+            WeightMatrix weights = rbm.getWeights();
+            float scale = rbm.getConfig().getLearningRate() / numInputs;
+            for (int s = start; s < end; s += batchSize) {
+                int e = Math.min(end, s + batchSize);
+                int[][] batch = propagate(layers, layer, inputs, representations, s, e);
+                rbm.contrastiveDivergence(batch, e - s, Params.NUM_TRAINING_CYCLES,
+                        weights, scale, weights, -scale, null, rand);
+            }
+        }
+
+        /*
+         * Method: addFrom
+         *
+         * Adds the changes of another worker to this one's, visiting only the
+         * rows either has touched, and clears the other worker.
+         */
+        private void addFrom(Worker other) {
+            for (int k = 0; k < other.dirtyRows.size(); ++k) {
+                int row = other.dirtyRows.get(k);
+                dPos.addRowFrom(other.dPos, row);
+                dNeg.addRowFrom(other.dNeg, row);
+                dirtyRows.add(row);
+                other.dPos.clearRow(row);
+                other.dNeg.clearRow(row);
+            }
+            other.dirtyRows.clear();
+        }
+
+        /*
+         * Method: addTo
+         *
+         * Moves the summed changes into the change matrices of the layer.
+         */
+        private void addTo(RBM rbm) {
+            rbm.prepareTraining();
+            for (int k = 0; k < dirtyRows.size(); ++k) {
+                int row = dirtyRows.get(k);
+                rbm.dPos.addRowFrom(dPos, row);
+                rbm.dNeg.addRowFrom(dNeg, row);
+                rbm.dirtyRows.add(row);
+                dPos.clearRow(row);
+                dNeg.clearRow(row);
+            }
+            dirtyRows.clear();
+        }
+    }
+} // end of class ParallelTrainer
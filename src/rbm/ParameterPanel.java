@@ -39,6 +39,10 @@ import javax.swing.*;
 
 public class ParameterPanel extends javax.swing.JPanel {
 
+    // the generation settings chosen with the radio buttons
+    private int visualDisplayMode = Params.DEFAULT_VISUAL_DISPLAY_MODE;
+    private int finalActivationMode = Params.DEFAULT_FINAL_ACTIVATION_MODE;
+
     /** Creates new form TempParameterPannel */
     public ParameterPanel() {
         initComponents();
@@ -80,6 +84,14 @@ public class ParameterPanel extends javax.swing.JPanel {
         return Float.parseFloat(learningRateField.getText());
     }//*/
 
+    public int getVisualDisplayMode() {
+        return visualDisplayMode;
+    }
+
+    public int getFinalActivationMode() {
+        return finalActivationMode;
+    }
+
     public void importSettings(MusicBrain brain) {
         int[] layerSizes = brain.getLayerSizes();
         DefaultListModel newModel = new DefaultListModel();
@@ -90,8 +102,30 @@ public class ParameterPanel extends javax.swing.JPanel {
         layerNumField.setText(layerSizes.length+"");
         epochNumField.setText(brain.getNumEpochs()+"");
         learningRateField.setText(brain.getLearningRate()+"");
-        Params.ALPHA = brain.getLearningRate(); //Only do this because ALPHA
-                                                //is a global we need to set
+
+        visualDisplayMode = brain.getConfig().getVisualDisplayMode();
+        switch (visualDisplayMode) {
+            case Params.NONE:
+            displayButtons.setSelected(noDisplayButton.getModel(), true);
+            break;
+            case Params.STATE:
+            displayButtons.setSelected(stateDisplayButton.getModel(), true);
+            break;
+            case Params.HINTON:
+            displayButtons.setSelected(hintonDisplayButton.getModel(), true);
+        }
+
+        finalActivationMode = brain.getConfig().getFinalActivationMode();
+        switch (finalActivationMode) {
+            case Params.DEFAULT:
+            finalActivationButtons.setSelected(defaultFinalActivationButton.getModel(), true);
+            break;
+            case Params.MAX_PROB:
+            finalActivationButtons.setSelected(maxProbFinalActivationButton.getModel(), true);
+            break;
+            case Params.PROB_DIST:
+            finalActivationButtons.setSelected(probDistFinalActivationButton.getModel(), true);
+        }
     }
 
     /** This method is called from within the constructor to
@@ -133,7 +167,7 @@ public class ParameterPanel extends javax.swing.JPanel {
         displayButtons.add(noDisplayButton);
         displayButtons.add(stateDisplayButton);
         displayButtons.add(hintonDisplayButton);
-        switch (Params.VISUAL_DISPLAY_MODE) {
+        switch (Params.DEFAULT_VISUAL_DISPLAY_MODE) {
             case Params.NONE:
             displayButtons.setSelected(noDisplayButton.getModel(), true);
             break;
@@ -148,7 +182,7 @@ public class ParameterPanel extends javax.swing.JPanel {
         finalActivationButtons.add(maxProbFinalActivationButton);
         finalActivationButtons.add(probDistFinalActivationButton);
 
-        switch (Params.FINAL_ACTIVATION_MODE) {
+        switch (Params.DEFAULT_FINAL_ACTIVATION_MODE) {
             case Params.DEFAULT:
             finalActivationButtons.setSelected(defaultFinalActivationButton.getModel(), true);
             break;
@@ -262,7 +296,7 @@ public class ParameterPanel extends javax.swing.JPanel {
         jPanel5.add(jLabel6, gridBagConstraints);
 
         learningRateField.setEditable(false);
-        learningRateField.setText(Params.ALPHA+"");
+        learningRateField.setText(Params.DEFAULT_ALPHA+"");
         learningRateField.setMinimumSize(new java.awt.Dimension(75, 20));
         learningRateField.setPreferredSize(new java.awt.Dimension(75, 20));
         learningRateField.addMouseListener(new java.awt.event.MouseAdapter() {
@@ -489,27 +523,27 @@ public class ParameterPanel extends javax.swing.JPanel {
     }//GEN-LAST:event_layerSizeListMouseClicked
 
     private void noDisplayButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_noDisplayButtonActionPerformed
-        Params.VISUAL_DISPLAY_MODE = Params.NONE;
+        visualDisplayMode = Params.NONE;
     }//GEN-LAST:event_noDisplayButtonActionPerformed
 
     private void hintonDisplayButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_hintonDisplayButtonActionPerformed
-        Params.VISUAL_DISPLAY_MODE = Params.HINTON;
+        visualDisplayMode = Params.HINTON;
     }//GEN-LAST:event_hintonDisplayButtonActionPerformed
 
     private void stateDisplayButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_stateDisplayButtonActionPerformed
-        Params.VISUAL_DISPLAY_MODE = Params.STATE;
+        visualDisplayMode = Params.STATE;
     }//GEN-LAST:event_stateDisplayButtonActionPerformed
 
     private void defaultFinalActivationButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_defaultFinalActivationButtonActionPerformed
-        Params.FINAL_ACTIVATION_MODE = Params.DEFAULT;
+        finalActivationMode = Params.DEFAULT;
     }//GEN-LAST:event_defaultFinalActivationButtonActionPerformed
 
     private void maxProbFinalActivationButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_maxProbFinalActivationButtonActionPerformed
-        Params.FINAL_ACTIVATION_MODE = Params.MAX_PROB;
+        finalActivationMode = Params.MAX_PROB;
     }//GEN-LAST:event_maxProbFinalActivationButtonActionPerformed
 
     private void probDistFinalActivationButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_probDistFinalActivationButtonActionPerformed
-        Params.FINAL_ACTIVATION_MODE = Params.PROB_DIST;
+        finalActivationMode = Params.PROB_DIST;
     }//GEN-LAST:event_probDistFinalActivationButtonActionPerformed
 
     private void learningRateFieldMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_learningRateFieldMouseClicked
@@ -524,7 +558,6 @@ public class ParameterPanel extends javax.swing.JPanel {
             try {
                 float parsedInput = Float.parseFloat(input);
                 if (parsedInput>0 && parsedInput <= 1) {
-                    Params.ALPHA = parsedInput;
                     learningRateField.setText(parsedInput+"");
                     break;
                 }
@@ -28,13 +28,9 @@ import encoding.NoteEncodings;
 public class Params
 {
 
-    /*THINGS THAT ARE GLOBAL:
-
-     * GENERATIONAL_ANNEALING
-     * FINAL_ACTIVATION
-     * DISPLAY_MODE
-     * ALPHA (learning rate)
-     *
+    /* The learning rate, final activation, generational annealing, display
+     * mode and note encoding are settings of each model (see class RbmConfig);
+     * the values here are only their defaults.
      */
     //////////////////
     //RBM PARAMETERS//
@@ -43,20 +39,58 @@ public class Params
     //number of training cycles per input (should probably remain at 1)
     public static final int NUM_TRAINING_CYCLES = 1;
 
+    //number of inputs whose statistics are gathered before each weight update
+    //(1 reproduces the original per-input training)
+    public static final int DEFAULT_BATCH_SIZE = 1;
+
+    //number of epochs between resamplings of the cached lower-layer
+    //representations used to train upper layers (0 propagates every input
+    //through the lower layers in every epoch, without a cache)
+    public static final int DEFAULT_CACHE_REFRESH_EPOCHS = 0;
+
+    //minimum number of multiply-adds in one activation before it is split
+    //across threads (only for LayeredRBMs with parallel activation turned on)
+    public static final int MIN_PARALLEL_WORK = 1 << 16;
+
+    //number of worker threads that split the inputs during training
+    //(1 trains on the calling thread only)
+    public static final int DEFAULT_TRAINING_THREADS = 1;
+
+    //use the interpolated lookup table for the logistic function instead of
+    //Math.exp (see class Sigmoid for its error bound); a setting of each
+    //model (see class RbmConfig), this is only its default.  Off by default
+    //so that models keep the exact numerics unless the table is asked for
+    public static final boolean DEFAULT_FAST_SIGMOID = false;
+
+    //during generation the weighted sums fed by a layer are updated from the
+    //nodes that flipped since the last half-step, unless more than this share
+    //of the active nodes of the layer flipped, in which case they are recomputed
+    public static final float MAX_INCREMENTAL_FLIP_FRACTION = 0.5f;
+
+    //number of incremental updates of a set of weighted sums after which it is
+    //recomputed anyway, so that rounding errors cannot build up
+    public static final int PRE_ACTIVATION_RESYNC_INTERVAL = 16;
+
     //minimum annealing rate for training (and generating if generational annealing is on)
     public static final float MIN_ANNEALING_RATE = 1f;
 
     //ues annealing during melody generation (should probably stay off)
-    public static boolean GENERATIONAL_ANNEALING = false; //GLOBAL VARIABLE//
+    public static final boolean DEFAULT_GENERATIONAL_ANNEALING = false;
 
     //learning rate for weight changes in the RBM class
-    public static float ALPHA = 0.2f; //GLOBAL VARIABLE//
+    public static final float DEFAULT_ALPHA = 0.2f;
+
+    //defaults for stopping generation early (see class ConvergenceRule); with
+    //no rule in the RbmConfig every generation runs its full number of cycles
+    public static final int DEFAULT_MIN_GENERATION_CYCLES = 5;
+    public static final int DEFAULT_CONVERGENCE_TOLERANCE = 12;
+    public static final int DEFAULT_CONVERGENCE_PATIENCE = 3;
 
     //final activation settings
     public static final int DEFAULT = 0;
     public static final int MAX_PROB = 1;
     public static final int PROB_DIST = 2;
-    public static int FINAL_ACTIVATION_MODE = MAX_PROB; //GLOBAL VARIABLE//
+    public static final int DEFAULT_FINAL_ACTIVATION_MODE = MAX_PROB;
 
 
     //////////////////
@@ -71,6 +105,10 @@ public class Params
     public static final int DEFAULT_NUM_EPOCHS = 250;
     public static final int DEFAULT_NUM_GENERATION_CYCLES = 20;
 
+    //generation cycles between two outputs drawn from one chain after its
+    //burn-in (0 gives every output a chain of its own)
+    public static final int DEFAULT_THINNING = 0;
+
 
     /////////////////////
     //VISUAL PARAMETERS//
@@ -80,13 +118,18 @@ public class Params
     public static final int NONE = 0;
     public static final int STATE = 1;
     public static final int HINTON = 2;
-    public static int VISUAL_DISPLAY_MODE = HINTON; //GLOBAL VARIABLE//
+    public static final int DEFAULT_VISUAL_DISPLAY_MODE = HINTON;
 
     //size of boxes in display
     public static final int BOX_WIDTH = 50;
 
-    //number of milliseconds to sleep for visualizer
-    public static final int SLEEP_TIME = 75;
+    //minimum number of milliseconds between visualizer updates during
+    //generation (generation itself never waits for the visualizer)
+    public static final int SNAPSHOT_INTERVAL = 75;
+
+    //maximum number of per-input progress events sent to TrainingListeners
+    //each second (per-layer and per-epoch events are always sent)
+    public static final int MAX_PROGRESS_EVENTS_PER_SECOND = 20;
 
 
     ///////////////////
@@ -96,10 +139,18 @@ public class Params
     public static final String OUT_DIRECTORY = "./";
     public static final String OUT_FILENAME = "new_melody";
 
+    //deflate saved brains (see class ModelFile); smaller files, slower loads
+    public static final boolean COMPRESS_MODEL_FILES = false;
+
+    //directory next to saved brains that holds their training inputs, and
+    //whether to deflate them (see class DatasetFile)
+    public static final String DATASET_DIRECTORY = "datasets";
+    public static final boolean COMPRESS_DATASET_FILES = true;
+
     ///////////////////////
     //Encoding Parameters//
     ///////////////////////
-    public static final NoteEncodings noteEncoding = NoteEncodings.Sequential;
+    public static final NoteEncodings DEFAULT_NOTE_ENCODING = NoteEncodings.Sequential;
     
     
     ////////////////////////////////
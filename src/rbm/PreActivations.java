@@ -0,0 +1,127 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package rbm;
+
+/**
+ * class PreActivations
+ *
+ * The weighted sums one layer of a GibbsChain feeds to the next (the hidden
+ * sums of an RBM from its visible states, or the visible sums from its
+ * hidden states), kept from one half-step to the next.  When only a few
+ * nodes of the source layer have flipped, the weight rows (or columns) of
+ * those nodes are added or taken away instead of summing every active node
+ * again, which makes the late, mostly settled cycles of a generation cheap.
+ *
+ * The visible sums of the input layer are only needed for its unclamped
+ * nodes, so a flip only updates those (see the target of the constructor).
+ *
+ * update() says when the sums have to be recomputed instead: the first time,
+ * when too many nodes flipped (see Params.MAX_INCREMENTAL_FLIP_FRACTION) and
+ * every Params.PRE_ACTIVATION_RESYNC_INTERVAL updates, to bound the rounding
+ * errors of the additions.  The caller then computes them and calls reset().
+ */
+public class PreActivations {
+
+    private final WeightMatrix weights;
+    private final boolean ofHidden;
+    private final LayerState target;
+    private float[] sums = null;
+    private LayerState last = null;
+    private int updatesSinceReset = 0;
+
+    /**
+     *
+     * @param weights - the weights of the RBM
+     * @param ofHidden - true for the sums of the hidden nodes (from the
+     * visible states, one row per flip), false for the sums of the visible
+     * nodes (from the hidden states, one column per flip)
+     */
+    public PreActivations(WeightMatrix weights, boolean ofHidden) {
+        this(weights, ofHidden, null);
+    }
+
+    /**
+     *
+     * @param weights - the weights of the RBM
+     * @param ofHidden - as above
+     * @param target - the layer the sums are fed to, whose clamped nodes
+     * need no sums and are left out of the updates (its clamps must not
+     * change while the sums are used), or null to update every sum
+     */
+    public PreActivations(WeightMatrix weights, boolean ofHidden, LayerState target) {
+        this.weights = weights;
+        this.ofHidden = ofHidden;
+        this.target = target;
+    }
+
+    /**
+     *
+     * @param source - the current states of the layer the sums come from
+     * @return - whether the sums now match source; false means they must be
+     * recomputed and passed to reset()
+     */
+    public boolean update(LayerState source) {
+        if (sums == null || updatesSinceReset >= Params.PRE_ACTIVATION_RESYNC_INTERVAL) {
+            return false;
+        }
+        int flips = source.distance(last);
+        if (flips > Params.MAX_INCREMENTAL_FLIP_FRACTION * source.cardinality()) {
+            return false;
+        }
+        for (int i = source.nextDifference(last, 0); i >= 0; i = source.nextDifference(last, i + 1)) {
+            float scale = source.isOn(i) ? 1f : -1f;
+            if (ofHidden) {
+                weights.addScaledRowTo(i, scale, sums);
+            } else if (target != null) {
+                weights.addScaledColumnTo(i, scale, sums, target);
+            } else {
+                weights.addScaledColumnTo(i, scale, sums);
+            }
+        }
+        last.copyFrom(source);
+        updatesSinceReset++;
+        return true;
+    }
+
+    /**
+     *
+     * @param newSums - the sums computed in full from source (kept, not copied)
+     * @param source - the states they were computed from
+     */
+    public void reset(float[] newSums, LayerState source) {
+        sums = newSums;
+        if (last == null) {
+            last = new LayerState(source);
+        } else {
+            last.copyFrom(source);
+        }
+        updatesSinceReset = 0;
+    }
+
+    /**
+     *
+     * @return - the current sums (not a copy; only to be read)
+     */
+    public float[] getSums() {
+        return sums;
+    }
+} // end of class PreActivations
@@ -29,11 +29,13 @@
 
 package rbm;
 
+import javax.swing.SwingUtilities;
+
 /**
  *
  * @author Sam Bosley
  */
-public class ProgressBars extends javax.swing.JPanel {
+public class ProgressBars extends javax.swing.JPanel implements TrainingListener {
 
     /** Creates new form ProgressBars */
     public ProgressBars() {
@@ -123,6 +125,71 @@ public class ProgressBars extends javax.swing.JPanel {
         overallProgressBar.setValue(n);
     }
 
+    /*
+     * The training events below come from the training thread, so each one
+     * updates the bars on the event dispatch thread.
+     */
+    private int numEpochs;
+    private int numInputs;
+
+    public void trainingStarted(final int numLayers, final int numEpochs, final int numInputs) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                ProgressBars.this.numEpochs = numEpochs;
+                ProgressBars.this.numInputs = numInputs;
+                setPartialBarRange(0, numEpochs * numInputs);
+                setOverallBarRange(0, numLayers * numEpochs * numInputs);
+            }
+        });
+    }
+
+    public void layerStarted(final int layer) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                setActionDescription("Training layer " + layer);
+            }
+        });
+    }
+
+    public void epochStarted(int layer, int epoch, float energy) {
+        progress(layer, epoch, 0);
+    }
+
+    public void progress(final int layer, final int epoch, final int input) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                String formattedInput = String.format("%0"+(numInputs+"").length()+"d", input);
+                setProgressDescription("Epoch: " + epoch + ", Input: " + formattedInput + " / " + numInputs);
+                setOverallProgress(layer * numEpochs * numInputs + epoch * numInputs + input);
+                setPartialProgress(epoch * numInputs + input);
+            }
+        });
+    }
+
+    public void trainingStopped() {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                setActionDescription("Training stopped");
+                setProgressDescription("");
+                setOverallProgress(0);
+                setPartialProgress(0);
+            }
+        });
+    }
+
+    public void trainingFinished(final long elapsedMillis) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                setActionDescription("Finished training");
+                double time = elapsedMillis/60000.0;
+                java.text.DecimalFormat df = new java.text.DecimalFormat("#.##");
+                setProgressDescription("Time elapsed: "+df.format(time)+" minutes");
+                setOverallProgress(0);
+                setPartialProgress(0);
+            }
+        });
+    }
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JLabel actionDescription;
     private javax.swing.JLabel jLabel1;
@@ -29,12 +29,15 @@ public class RBM implements Serializable {
 
     static final long serialVersionUID = 3800715381958402370L;
     //member variables
-    int[] visibleNodes;
-    int[] hiddenNodes;
-    float[][] weights;
-    float[][] dPos;    // accumulates positive weight changes
-    float[][] dNeg;    // accumulates negative weight changes
+    LayerState visibleNodes;
+    LayerState hiddenNodes;
+    WeightMatrix weightMatrix;
+    transient WeightMatrix dPos;    // accumulates positive weight changes (see prepareTraining)
+    transient WeightMatrix dNeg;    // accumulates negative weight changes
+    transient ActiveSet dirtyRows;  // rows of dPos/dNeg written since the last update
     float annealingRate; // multiplier in sigmoid function
+    boolean parallel;    // split activations across the shared ForkJoinPool
+    RbmConfig config = RbmConfig.DEFAULT; // learning rate (set by LayeredRBM)
 
     /*
      *  Method: constructor
@@ -43,23 +46,12 @@ public class RBM implements Serializable {
      */
     public RBM(int numVisibleNodes, int numHiddenNodes) {
         //initialize nodes
-        this.visibleNodes = new int[numVisibleNodes + 1]; //add one spot for bias
-        this.hiddenNodes = new int[numHiddenNodes + 1];
-        visibleNodes[visibleNodes.length - 1] = 1; //bias is always on
-        hiddenNodes[hiddenNodes.length - 1] = 1;
-
-        //initialize weights and weight change matrices
-        this.weights = new float[numVisibleNodes + 1][numHiddenNodes + 1];
-        this.dPos = new float[numVisibleNodes + 1][numHiddenNodes + 1];
-        this.dNeg = new float[numVisibleNodes + 1][numHiddenNodes + 1];
-        Random rand = new Random(); //randomly initialize weights
-        for (int i = 0; i < numVisibleNodes + 1; ++i) {
-            for (int j = 0; j < numHiddenNodes + 1; ++j) {
-                weights[i][j] = (float) (0.1 * rand.nextGaussian());
-                dPos[i][j] = 0;
-                dNeg[i][j] = 0;
-            }
-        }
+        this.visibleNodes = new LayerState(numVisibleNodes + 1); //add one spot for bias
+        this.hiddenNodes = new LayerState(numHiddenNodes + 1);
+        visibleNodes.set(visibleNodes.size() - 1, 1); //bias is always on
+        hiddenNodes.set(hiddenNodes.size() - 1, 1);
+
+        initializeWeights(numVisibleNodes + 1, numHiddenNodes + 1);
     }
 
     /*
@@ -68,27 +60,99 @@ public class RBM implements Serializable {
      * constructs a new RBM using a pre-defined set of input nodes.
      * useful when layering RBMs.
      */
-    public RBM(int[] visibleNodes, int numHiddenNodes) {
+    public RBM(LayerState visibleNodes, int numHiddenNodes) {
         this.visibleNodes = visibleNodes;
 
-        this.hiddenNodes = new int[numHiddenNodes + 1];
-        this.hiddenNodes[hiddenNodes.length - 1] = 1;
-
-        //initialize weights and weight change matrices
-        this.weights = new float[visibleNodes.length][numHiddenNodes + 1];
-        this.dPos = new float[visibleNodes.length][numHiddenNodes + 1];
-        this.dNeg = new float[visibleNodes.length][numHiddenNodes + 1];
-        Random rand = new Random(); //randomly initialize weights
-        for (int i = 0; i < visibleNodes.length; ++i) {
-            for (int j = 0; j < numHiddenNodes + 1; ++j) {
-                weights[i][j] = (float) (0.1 * rand.nextGaussian());
-                dPos[i][j] = 0;
-                dNeg[i][j] = 0;
-            }
+        this.hiddenNodes = new LayerState(numHiddenNodes + 1);
+        this.hiddenNodes.set(hiddenNodes.size() - 1, 1);
+
+        initializeWeights(visibleNodes.size(), numHiddenNodes + 1);
+    }
+
+    /*
+     * Method: constructor
+     *
+     * constructs an RBM from the states and weights of a saved one (see
+     * class ModelFile)
+     */
+    RBM(LayerState visibleNodes, LayerState hiddenNodes, WeightMatrix weightMatrix) {
+        this.visibleNodes = visibleNodes;
+        this.hiddenNodes = hiddenNodes;
+        this.weightMatrix = weightMatrix;
+    }
+
+    /*
+     * Method: initializeWeights
+     *
+     * randomly initializes the weights of the given size
+     */
+    private void initializeWeights(int numRows, int numCols) {
+        this.weightMatrix = new WeightMatrix(numRows, numCols);
+        Sampler rand = Sampler.forThread(); //randomly initialize weights
+        float[] weights = weightMatrix.getData();
+        for (int i = 0; i < weights.length; ++i) {
+            weights[i] = (float) (0.1 * rand.nextGaussian());
         }
     }
 
-    public int[] getVisible() {
+    /*
+     * Method: readObject
+     *
+     * The weight change matrices are all zeros between updates, so they are
+     * not saved (see prepareTraining).  Brains saved before the weights
+     * moved into a WeightMatrix still carry a float[][] named "weights",
+     * and brains saved before the states were packed into LayerStates carry
+     * int[] node arrays; both are converted.  (The converted node arrays are
+     * no longer shared between layers; LayeredRBM relinks them.)
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        visibleNodes = toLayerState(fields.get("visibleNodes", null));
+        hiddenNodes = toLayerState(fields.get("hiddenNodes", null));
+        annealingRate = fields.get("annealingRate", 0f);
+        parallel = fields.get("parallel", false);
+        config = (RbmConfig) fields.get("config", null);
+        if (config == null) {
+            config = RbmConfig.DEFAULT;
+        }
+        weightMatrix = (WeightMatrix) fields.get("weightMatrix", null);
+        if (weightMatrix == null) {
+            weightMatrix = new WeightMatrix((float[][]) fields.get("weights", null));
+        }
+    }
+
+    /*
+     * Method: prepareTraining
+     *
+     * Creates the weight change matrices, which are as large as the weights
+     * but only needed while training, the first time this RBM is trained.
+     * Weights mapped from a model file are read-only, so they are copied to
+     * the heap first.
+     */
+    void prepareTraining() {
+        if (weightMatrix.isMapped()) {
+            weightMatrix = weightMatrix.onHeap();
+        }
+        if (dPos == null) {
+            dPos = new WeightMatrix(weightMatrix.getNumRows(), weightMatrix.getNumCols());
+            dNeg = new WeightMatrix(weightMatrix.getNumRows(), weightMatrix.getNumCols());
+            dirtyRows = new ActiveSet(weightMatrix.getNumRows());
+        }
+    }
+
+    private static LayerState toLayerState(Object nodes) {
+        if (nodes instanceof int[]) {
+            return new LayerState((int[]) nodes);
+        }
+        return (LayerState) nodes;
+    }
+
+    /*
+     * Method: getVisible
+     *
+     * Returns the visible layer state itself (not a copy)
+     */
+    public LayerState getVisible() {
         return visibleNodes;
     }
 
@@ -99,28 +163,75 @@ public class RBM implements Serializable {
      * Todo: System.arraycopy?
      */
     public void setInput(int[] newInput) {
-        System.out.println(visibleNodes.length);
-        for (int i = 0; i < visibleNodes.length - 1 && i < newInput.length; i++) {
-            visibleNodes[i] = newInput[i];
+        System.out.println(visibleNodes.size());
+        for (int i = 0; i < visibleNodes.size() - 1 && i < newInput.length; i++) {
+            visibleNodes.set(i, newInput[i]);
         }
     }
 
-    public int[] getHidden() {
+    /*
+     * Method: setInput
+     *
+     * Sets the visible nodes from the data in a DataVessel
+     */
+    public void setInput(DataVessel input) {
+        setInput(input.getData());
+    }
+
+    public LayerState getHidden() {
         return hiddenNodes;
     }
 
-    public float[][] getWeights() {
-        return weights;
+    public WeightMatrix getWeights() {
+        return weightMatrix;
     }
 
-    /*
-    public void setWeights(float[][] weights) {
-    this.weights = weights;
-    }//*/
     public void setAnnealingRate(float newRate) {
         annealingRate = newRate;
     }
 
+    /*
+     * Method: setParallel
+     *
+     * Chooses whether the activation kernels split their work across the
+     * threads of the shared ForkJoinPool (see class Parallel).  Small layers
+     * are still activated serially.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public RbmConfig getConfig() {
+        return config;
+    }
+
+    /*
+     * Method: setConfig
+     *
+     * Gives the layer the settings of its model; only the learning rate is
+     * used at this level.
+     */
+    public void setConfig(RbmConfig config) {
+        this.config = config;
+    }
+
+    /*
+     * Method: runKernel
+     *
+     * Runs kernel over [0, numIndices), in parallel if that is turned on
+     */
+    protected void runKernel(int numIndices, int workPerIndex, Parallel.RangeKernel kernel) {
+        if (parallel) {
+            Parallel.forRange(0, numIndices, workPerIndex, kernel);
+        } else {
+            kernel.compute(0, numIndices);
+        }
+    }
+
     /*
      *  Method: train
      *
@@ -138,49 +249,281 @@ public class RBM implements Serializable {
         accumulateNeg();
     }
 
+    /*
+     *  Method: trainBatch
+     *
+     *  Trains the network on the first batchLength rows of batch (each row a
+     *  full visible layer state, bias included) and adds the initial and final
+     *  contrastive divergences of the whole batch to the accumulators.
+     *
+     *  The node arrays of this RBM are left untouched; the batch is pushed
+     *  through the weights as matrix products, so every weight row is read
+     *  once per half-step for the whole batch instead of once per input.
+     */
+    public void trainBatch(int[][] batch, int batchLength, int numCycles) {
+        prepareTraining();
+        contrastiveDivergence(batch, batchLength, numCycles,
+                dPos, 1f, dNeg, 1f, dirtyRows, Sampler.forThread());
+    }
+
+    /*
+     *  Method: contrastiveDivergence
+     *
+     *  The work of trainBatch, with the destination of the statistics left to
+     *  the caller: the positive statistics are added to pos scaled by
+     *  posScale, the negative ones to neg scaled by negScale, and every row
+     *  touched is added to dirty (if it is not null).
+     *
+     *  Only the weights and the annealing rate are read, and all node states
+     *  live in buffers local to the call, so several threads may run this at
+     *  once as long as each has its own destinations.  Both sets of
+     *  statistics are added after the Gibbs chain has finished, so passing
+     *  the weight matrix itself as the destination updates it in place without
+     *  the chain seeing its own positive phase.
+     */
+    protected void contrastiveDivergence(int[][] batch, int batchLength, int numCycles,
+                                         WeightMatrix pos, float posScale,
+                                         WeightMatrix neg, float negScale,
+                                         ActiveSet dirty, Sampler rand) {
+        int numVisible = weightMatrix.getNumRows();
+        int numHidden = weightMatrix.getNumCols();
+
+        int[][] visible = new int[batchLength][];
+        int[][] firstHidden = new int[batchLength][numHidden];
+        for (int b = 0; b < batchLength; ++b) {
+            visible[b] = batch[b];
+        }
+
+        activateHiddenBatch(visible, firstHidden, batchLength, rand);
+
+        int[][] hidden = firstHidden;
+        if (numCycles > 0) {
+            //never write the reconstructions into the caller's rows
+            hidden = new int[batchLength][];
+            for (int b = 0; b < batchLength; ++b) {
+                visible[b] = new int[numVisible];
+                visible[b][numVisible - 1] = 1;
+                hidden[b] = firstHidden[b].clone();
+            }
+        }
+        for (int i = 0; i < numCycles; ++i) {
+            activateVisibleBatch(visible, hidden, batchLength, rand);
+            activateHiddenBatch(visible, hidden, batchLength, rand);
+        }
+
+        accumulateBatch(pos, posScale, dirty, batch, firstHidden, batchLength);
+        accumulateBatch(neg, negScale, dirty, visible, hidden, batchLength);
+    }
+
+    /*
+     *  Method: activateVisibleBatch / activateHiddenBatch
+     *
+     *  Batch counterparts of activateVisible / activateHidden.  Weighted sums
+     *  for all rows are computed together, walking the weight matrix one
+     *  visible row at a time.
+     */
+    protected void activateHiddenBatch(int[][] visible, int[][] hidden, int batchLength, Sampler rand) {
+        int numHidden = weightMatrix.getNumCols();
+        float[][] sums = new float[batchLength][numHidden];
+
+        for (int i = 0; i < weightMatrix.getNumRows(); ++i) {
+            for (int b = 0; b < batchLength; ++b) {
+                if (visible[b][i] == 1) {
+                    weightMatrix.addRowTo(i, sums[b]);
+                }
+            }
+        }
+
+        for (int b = 0; b < batchLength; ++b) {
+            float[] uniforms = rand.uniforms(numHidden - 1);
+            for (int j = 0; j < numHidden - 1; ++j) {
+                hidden[b][j] = (uniforms[j] < logsig(sums[b][j], annealingRate)) ? 1 : 0;
+            }
+            hidden[b][numHidden - 1] = 1;
+        }
+    }
+
+    protected void activateVisibleBatch(int[][] visible, int[][] hidden, int batchLength, Sampler rand) {
+        for (int i = 0; i < weightMatrix.getNumRows() - 1; ++i) {
+            for (int b = 0; b < batchLength; ++b) {
+                float sum = weightMatrix.sumRow(i, hidden[b]);
+                visible[b][i] = (rand.nextFloat() < logsig(sum, 1)) ? 1 : 0;
+            }
+        }
+    }
+
+    /*
+     * Method: accumulateBatch
+     *
+     * Adds the product (visible transposed) x (hidden) of a batch, times scale,
+     * to the given weight change matrix
+     */
+    protected static void accumulateBatch(WeightMatrix delta, float scale, ActiveSet dirty,
+                                          int[][] visible, int[][] hidden, int batchLength) {
+        for (int i = 0; i < delta.getNumRows(); ++i) {
+            for (int b = 0; b < batchLength; ++b) {
+                if (visible[b][i] == 1) {
+                    delta.addStatesToRow(i, hidden[b], scale);
+                    if (dirty != null) {
+                        dirty.add(i);
+                    }
+                }
+            }
+        }
+    }
+
     /*
      *  Method: activateVisible / activateHidden
      *
      *  Chooses whether to activate each input/hidden node based on the
      *  activation states and weights of the other nodes
      *
-     *  First computes weighted sum of state/weight products.
+     *  First computes weighted sum of state/weight products.  The hidden
+     *  sums are built by adding up the weight rows of the active visible
+     *  nodes, which keeps the walk through the weights sequential.
+     *  All weighted sums are computed before any node is sampled, so the
+     *  sums can be split across threads while the random draws stay in the
+     *  same order as a serial run.
      *  TODO should we normalize weighted sums???
      */
     public void activateVisible() {
+        activateVisible(visibleNodes, hiddenNodes, Sampler.forThread());
+    }
+
+    public void activateHidden() {
+        activateHidden(visibleNodes, hiddenNodes, annealingRate, Sampler.forThread());
+    }
+
+    /*
+     *  Method: activateVisible / activateHidden (with explicit states)
+     *
+     *  The same activations on states that belong to the caller (see class
+     *  GibbsChain).  Only the weights of this RBM are read, so any number of
+     *  threads may run these at once on their own states.
+     */
+    public void activateVisible(LayerState visible, LayerState hidden, Sampler rand) {
+        sampleVisible(computeVisibleWeightedSums(visible, hidden), visible, rand);
+    }
 
-        //initialize random number generator
-        Random rand = new Random();
+    public void activateHidden(LayerState visible, LayerState hidden, float annealingRate, Sampler rand) {
+        sampleHidden(computeHiddenWeightedSums(visible), hidden, annealingRate, rand);
+    }
 
-        for (int i = 0; i < visibleNodes.length - 1; ++i) {
-            //compute weighted sum
-            float sum = computeVisibleWeightedSum(i);
+    /*
+     *  Method: sampleVisible / sampleHidden
+     *
+     *  The second half of activateVisible / activateHidden: sets the states
+     *  of a layer from weighted sums that are already computed (for a single
+     *  chain or one row of a batch, see class GibbsBatch)
+     */
+    protected void sampleVisible(float[] sums, LayerState visible, Sampler rand) {
+        float[] uniforms = rand.uniforms(visible.size() - 1);
+        for (int i = 0; i < visible.size() - 1; ++i) {
             //probabalistically activate node based on sigmoid computation
-            if (rand.nextDouble() < logsig(sum, 1)) {
-                visibleNodes[i] = 1;
+            if (uniforms[i] < logsig(sums[i], 1)) {
+                visible.set(i, 1);
             } else {
-                visibleNodes[i] = 0;
+                visible.set(i, 0);
             }
         }
     }
 
-    public void activateHidden() {
+    protected void sampleHidden(float[] sums, LayerState hidden, float annealingRate, Sampler rand) {
+        float[] uniforms = rand.uniforms(hidden.size() - 1);
+        for (int i = 0; i < hidden.size() - 1; ++i) {
+            //probabalistically activate node based on sigmoid computation
+            if (uniforms[i] < logsig(sums[i], annealingRate)) {
+                hidden.set(i, 1);
+            } else {
+                hidden.set(i, 0);
+            }
+        }
+    }
+
+    // Computes the weighted sums for all hidden nodes
+    protected float[] computeHiddenWeightedSums() {
+        return computeHiddenWeightedSums(visibleNodes);
+    }
+
+    // Computes the weighted sums for all hidden nodes from the given visible
+    // states.  The work is the number of active visible nodes (a popcount),
+    // which decides whether it is worth splitting across threads
+    protected float[] computeHiddenWeightedSums(final LayerState visible) {
+        final float[] sums = new float[weightMatrix.getNumCols()];
+        runKernel(sums.length, visible.cardinality(), new Parallel.RangeKernel() {
+            public void compute(int start, int end) {
+                weightMatrix.addRowsTo(visible, sums, start, end);
+            }
+        });
+        return sums;
+    }
+
+    // Computes the weighted sums for all visible nodes (the bias is left at 0)
+    protected float[] computeVisibleWeightedSums() {
+        return computeVisibleWeightedSums(visibleNodes, hiddenNodes);
+    }
+
+    protected float[] computeVisibleWeightedSums(final LayerState visible, final LayerState hidden) {
+        final float[] sums = new float[weightMatrix.getNumRows()];
+        runKernel(sums.length - 1, weightMatrix.getNumCols(), new Parallel.RangeKernel() {
+            public void compute(int start, int end) {
+                computeVisibleWeightedSums(visible, hidden, sums, start, end);
+            }
+        });
+        return sums;
+    }
 
-        Random rand = new Random();
-        for (int i = 0; i < hiddenNodes.length - 1; ++i) {
-            //compute weighted sum
-            float sum = 0;
-            for (int j = 0; j < visibleNodes.length; ++j) {
-                if (visibleNodes[j] == 1) {
-                    sum += weights[j][i];
+    // Computes the weighted sums for the visible nodes in [start, end)
+    protected void computeVisibleWeightedSums(LayerState visible, LayerState hidden, float[] sums, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            sums[i] = weightMatrix.sumRow(i, hidden);
+        }
+    }
+
+    /*
+     *  Method: computeHiddenWeightedSumsBatch / computeVisibleWeightedSumsBatch
+     *
+     *  The weighted sums of many chains at once (one row of the result per
+     *  chain).  The weight matrix is walked one visible row at a time and
+     *  each row is applied to every chain before moving on, so it is loaded
+     *  once per batch instead of once per chain.  The sums of each chain are
+     *  added in the same order as for a single chain, so they are identical.
+     */
+    protected float[][] computeHiddenWeightedSumsBatch(final LayerState[] visible) {
+        final float[][] sums = new float[visible.length][weightMatrix.getNumCols()];
+        int work = 0;
+        for (LayerState state : visible) {
+            work += state.cardinality();
+        }
+        runKernel(weightMatrix.getNumCols(), work, new Parallel.RangeKernel() {
+            public void compute(int start, int end) {
+                for (int i = 0; i < weightMatrix.getNumRows(); ++i) {
+                    for (int b = 0; b < visible.length; ++b) {
+                        if (visible[b].isOn(i)) {
+                            weightMatrix.addRowTo(i, sums[b], start, end);
+                        }
+                    }
                 }
             }
+        });
+        return sums;
+    }
 
-            //probabalistically activate node based on sigmoid computation
-            if (rand.nextDouble() < logsig(sum, annealingRate)) {
-                hiddenNodes[i] = 1;
-            } else {
-                hiddenNodes[i] = 0;
+    protected float[][] computeVisibleWeightedSumsBatch(final LayerState[] visible, final LayerState[] hidden) {
+        final float[][] sums = new float[visible.length][weightMatrix.getNumRows()];
+        runKernel(weightMatrix.getNumRows() - 1, weightMatrix.getNumCols() * visible.length, new Parallel.RangeKernel() {
+            public void compute(int start, int end) {
+                computeVisibleWeightedSumsBatch(visible, hidden, sums, start, end);
+            }
+        });
+        return sums;
+    }
+
+    // Computes the weighted sums of every chain for the visible nodes in [start, end)
+    protected void computeVisibleWeightedSumsBatch(LayerState[] visible, LayerState[] hidden, float[][] sums, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            for (int b = 0; b < visible.length; ++b) {
+                sums[b][i] = weightMatrix.sumRow(i, hidden[b]);
             }
         }
     }
@@ -188,39 +531,30 @@ public class RBM implements Serializable {
     // Computes the weighted sum for a visible node
     // used for visualization
     public float computeVisibleWeightedSum(int index) {
-        float sum = 0;
-        for (int j = 0; j < hiddenNodes.length; j++) {
-            if (hiddenNodes[j] == 1) {
-                sum += weights[index][j];
-            }
-        }
-        return sum;
+        return weightMatrix.sumRow(index, hiddenNodes);
     }
 
     /*
      * Method: accumulatePos / accumulateNeg
      *
      * Increments positive/negative weight change matrices by product of input
-     * node states and hidden node states
+     * node states and hidden node states.  Only rows of active input nodes
+     * change; they are remembered in dirtyRows for updateWeights.
      *
      */
     protected void accumulatePos() {
-        for (int i = 0; i < visibleNodes.length; ++i) {
-            if (visibleNodes[i] == 1) {
-                for (int j = 0; j < hiddenNodes.length; ++j) {
-                    dPos[i][j] += hiddenNodes[j];
-                }
-            }
+        prepareTraining();
+        for (int i = visibleNodes.nextSetBit(0); i >= 0; i = visibleNodes.nextSetBit(i + 1)) {
+            dPos.addStatesToRow(i, hiddenNodes);
+            dirtyRows.add(i);
         }
     }
 
     protected void accumulateNeg() {
-        for (int i = 0; i < visibleNodes.length; ++i) {
-            if (visibleNodes[i] == 1) {
-                for (int j = 0; j < hiddenNodes.length; ++j) {
-                    dNeg[i][j] += hiddenNodes[j];
-                }
-            }
+        prepareTraining();
+        for (int i = visibleNodes.nextSetBit(0); i >= 0; i = visibleNodes.nextSetBit(i + 1)) {
+            dNeg.addStatesToRow(i, hiddenNodes);
+            dirtyRows.add(i);
         }
     }
 
@@ -232,17 +566,31 @@ public class RBM implements Serializable {
      * matrices respectively (divided by the total number of inputs).  Also
      * resets weight change matrices.
      *
+     * Every other row of the change matrices is still zero, so only the rows
+     * in dirtyRows are visited.  This gives exactly the weights a sweep over
+     * the whole matrix would.
+     *
      */
     public void updateWeights(int numInputs) {
-        for (int i = 0; i < weights.length; ++i) {
-            for (int j = 0; j < weights[0].length; ++j) {
-                weights[i][j] += (Params.ALPHA * dPos[i][j] / numInputs);
-                weights[i][j] -= (Params.ALPHA * dNeg[i][j] / numInputs);
+        if (dirtyRows == null) {
+            return; // nothing accumulated yet
+        }
+        float[] weights = weightMatrix.getData();
+        float[] pos = dPos.getData();
+        float[] neg = dNeg.getData();
+        int numCols = weightMatrix.getNumCols();
+        float alpha = config.getLearningRate();
+        for (int k = 0; k < dirtyRows.size(); ++k) {
+            int start = dirtyRows.get(k) * numCols;
+            for (int i = start; i < start + numCols; ++i) {
+                weights[i] += (alpha * pos[i] / numInputs);
+                weights[i] -= (alpha * neg[i] / numInputs);
 
-                dPos[i][j] = 0;
-                dNeg[i][j] = 0;
+                pos[i] = 0;
+                neg[i] = 0;
             }
         }
+        dirtyRows.clear();
     }
 
     /*
@@ -254,10 +602,8 @@ public class RBM implements Serializable {
      */
     public float getEnergy() {
         float energy = 0;
-        for (int i = 0; i < visibleNodes.length; ++i) {
-            for (int j = 0; j < hiddenNodes.length; ++j) {
-                energy -= visibleNodes[i] * hiddenNodes[j] * weights[i][j];
-            }
+        for (int i = visibleNodes.nextSetBit(0); i >= 0; i = visibleNodes.nextSetBit(i + 1)) {
+            energy -= weightMatrix.sumRow(i, hiddenNodes);
         }
         return energy;
     }
@@ -271,8 +617,11 @@ public class RBM implements Serializable {
      *
      * input is adjusted by annealing rate, which should be between 0 and 1
      *
+     * see class Sigmoid for the fast approximation used unless the config
+     * turns it off
+     *
      */
-    protected static float logsig(float x, float annealingRate) {
-        return 1 / (1 + ((float) Math.exp(-x / annealingRate)));
+    protected float logsig(float x, float annealingRate) {
+        return Sigmoid.logsig(x, annealingRate, config.isFastSigmoid());
     }
 }
@@ -0,0 +1,197 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+import java.io.Serializable;
+import encoding.NoteEncodings;
+
+/**
+ * class RbmConfig
+ *
+ * The settings of one model that used to be global variables in Params: the
+ * learning rate, how generation ends and is shown, the note encoding of its
+ * inputs and whether to use the fast logistic function (see class Sigmoid),
+ * along with the rule for stopping generation early (null to always run
+ * every cycle).  A config never changes; the with... methods return a copy
+ * with one setting changed, which the model can then be given in place of
+ * its old one.  Models that share nothing but the JVM can therefore train
+ * and generate side by side with different settings.
+ */
+public final class RbmConfig implements Serializable {
+
+    static final long serialVersionUID = 3198342174160127513L;
+
+    // the settings every model started with when they were globals
+    public static final RbmConfig DEFAULT = new RbmConfig(Params.DEFAULT_ALPHA,
+            Params.DEFAULT_FINAL_ACTIVATION_MODE, Params.DEFAULT_GENERATIONAL_ANNEALING,
+            Params.DEFAULT_VISUAL_DISPLAY_MODE, Params.DEFAULT_NOTE_ENCODING);
+
+    private final float learningRate;
+    private final int finalActivationMode;
+    private final boolean generationalAnnealing;
+    private final int visualDisplayMode;
+    private final NoteEncodings noteEncoding;
+    private final ConvergenceRule convergenceRule;
+    private final boolean fastSigmoid;
+
+    /**
+     *
+     * @param learningRate - the learning rate for weight changes
+     * @param finalActivationMode - Params.DEFAULT, MAX_PROB or PROB_DIST
+     * @param generationalAnnealing - whether to anneal during generation
+     * @param visualDisplayMode - Params.NONE, STATE or HINTON
+     * @param noteEncoding - the encoding of the notes of the inputs
+     *
+     * Constructor for a config without a convergence rule
+     */
+    public RbmConfig(float learningRate, int finalActivationMode,
+            boolean generationalAnnealing, int visualDisplayMode, NoteEncodings noteEncoding) {
+        this(learningRate, finalActivationMode, generationalAnnealing, visualDisplayMode, noteEncoding, null);
+    }
+
+    /**
+     *
+     * @param learningRate - the learning rate for weight changes
+     * @param finalActivationMode - Params.DEFAULT, MAX_PROB or PROB_DIST
+     * @param generationalAnnealing - whether to anneal during generation
+     * @param visualDisplayMode - Params.NONE, STATE or HINTON
+     * @param noteEncoding - the encoding of the notes of the inputs
+     * @param convergenceRule - when generation may stop early, or null to
+     * always run the full number of cycles
+     *
+     * Constructor for a config with the default logistic function
+     */
+    public RbmConfig(float learningRate, int finalActivationMode, boolean generationalAnnealing,
+            int visualDisplayMode, NoteEncodings noteEncoding, ConvergenceRule convergenceRule) {
+        this(learningRate, finalActivationMode, generationalAnnealing, visualDisplayMode, noteEncoding,
+                convergenceRule, Params.DEFAULT_FAST_SIGMOID);
+    }
+
+    /**
+     *
+     * @param learningRate - the learning rate for weight changes
+     * @param finalActivationMode - Params.DEFAULT, MAX_PROB or PROB_DIST
+     * @param generationalAnnealing - whether to anneal during generation
+     * @param visualDisplayMode - Params.NONE, STATE or HINTON
+     * @param noteEncoding - the encoding of the notes of the inputs
+     * @param convergenceRule - when generation may stop early, or null to
+     * always run the full number of cycles
+     * @param fastSigmoid - whether to read the logistic function from the
+     * table of class Sigmoid rather than compute it with Math.exp
+     */
+    public RbmConfig(float learningRate, int finalActivationMode, boolean generationalAnnealing,
+            int visualDisplayMode, NoteEncodings noteEncoding, ConvergenceRule convergenceRule,
+            boolean fastSigmoid) {
+        if (!(learningRate > 0)) {
+            throw new IllegalArgumentException("Learning rate must be positive: " + learningRate);
+        }
+        if (finalActivationMode < Params.DEFAULT || finalActivationMode > Params.PROB_DIST) {
+            throw new IllegalArgumentException("Unknown final activation mode " + finalActivationMode);
+        }
+        if (visualDisplayMode < Params.NONE || visualDisplayMode > Params.HINTON) {
+            throw new IllegalArgumentException("Unknown visual display mode " + visualDisplayMode);
+        }
+        if (noteEncoding == null) {
+            throw new IllegalArgumentException("No note encoding");
+        }
+        this.learningRate = learningRate;
+        this.finalActivationMode = finalActivationMode;
+        this.generationalAnnealing = generationalAnnealing;
+        this.visualDisplayMode = visualDisplayMode;
+        this.noteEncoding = noteEncoding;
+        this.convergenceRule = convergenceRule;
+        this.fastSigmoid = fastSigmoid;
+    }
+
+    public float getLearningRate() {
+        return learningRate;
+    }
+
+    public int getFinalActivationMode() {
+        return finalActivationMode;
+    }
+
+    public boolean isGenerationalAnnealing() {
+        return generationalAnnealing;
+    }
+
+    public int getVisualDisplayMode() {
+        return visualDisplayMode;
+    }
+
+    public NoteEncodings getNoteEncoding() {
+        return noteEncoding;
+    }
+
+    public ConvergenceRule getConvergenceRule() {
+        return convergenceRule;
+    }
+
+    public boolean isFastSigmoid() {
+        return fastSigmoid;
+    }
+
+    public RbmConfig withLearningRate(float learningRate) {
+        return new RbmConfig(learningRate, finalActivationMode, generationalAnnealing, visualDisplayMode,
+                noteEncoding, convergenceRule, fastSigmoid);
+    }
+
+    public RbmConfig withFinalActivationMode(int finalActivationMode) {
+        return new RbmConfig(learningRate, finalActivationMode, generationalAnnealing, visualDisplayMode,
+                noteEncoding, convergenceRule, fastSigmoid);
+    }
+
+    public RbmConfig withGenerationalAnnealing(boolean generationalAnnealing) {
+        return new RbmConfig(learningRate, finalActivationMode, generationalAnnealing, visualDisplayMode,
+                noteEncoding, convergenceRule, fastSigmoid);
+    }
+
+    public RbmConfig withVisualDisplayMode(int visualDisplayMode) {
+        return new RbmConfig(learningRate, finalActivationMode, generationalAnnealing, visualDisplayMode,
+                noteEncoding, convergenceRule, fastSigmoid);
+    }
+
+    public RbmConfig withNoteEncoding(NoteEncodings noteEncoding) {
+        return new RbmConfig(learningRate, finalActivationMode, generationalAnnealing, visualDisplayMode,
+                noteEncoding, convergenceRule, fastSigmoid);
+    }
+
+    public RbmConfig withConvergenceRule(ConvergenceRule convergenceRule) {
+        return new RbmConfig(learningRate, finalActivationMode, generationalAnnealing, visualDisplayMode,
+                noteEncoding, convergenceRule, fastSigmoid);
+    }
+
+    public RbmConfig withFastSigmoid(boolean fastSigmoid) {
+        return new RbmConfig(learningRate, finalActivationMode, generationalAnnealing, visualDisplayMode,
+                noteEncoding, convergenceRule, fastSigmoid);
+    }
+
+    @Override
+    public String toString() {
+        return "learningRate=" + learningRate + ", finalActivationMode=" + finalActivationMode
+                + ", generationalAnnealing=" + generationalAnnealing
+                + ", visualDisplayMode=" + visualDisplayMode + ", noteEncoding=" + noteEncoding
+                + ", convergenceRule=" + (convergenceRule == null ? "none" : "(" + convergenceRule + ")")
+                + ", fastSigmoid=" + fastSigmoid;
+    }
+}
@@ -47,21 +47,17 @@ import java.io.File;
  */
 public class ReceptiveFieldImageMaker {
 
-    public static void makeReceptiveField(float[][] weights, int numRows, int numCols, boolean clustering, boolean thresholding, String filename) {
+    public static void makeReceptiveField(WeightMatrix weights, int numRows, int numCols, boolean clustering, boolean thresholding, String filename) {
 
         // the rule of thumb for k-means is to make # clusters = the square root of half the number of inputs.
-        int groups = (int)Math.sqrt(weights[0].length / 2);
+        int groups = (int)Math.sqrt(weights.getNumCols() / 2);
 
         ArrayList<BufferedImage> imgList = new ArrayList<BufferedImage>();
         ArrayList<DataPoint> dataPoints = new ArrayList<DataPoint>();
 
-        for (int detector = 0; detector < weights[0].length; detector++) {
-            float[] transposed = new float[weights.length];
-
+        for (int detector = 0; detector < weights.getNumCols(); detector++) {
             // feature detectors are columns in the weight matrix
-            for (int i = 0; i < weights.length; i++) {
-                transposed[i] = weights[i][detector];
-            }
+            float[] transposed = weights.getColumn(detector);
 
             normalize(transposed);
             dataPoints.add(new DataPoint(transposed, detector));
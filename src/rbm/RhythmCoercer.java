@@ -144,8 +144,7 @@ public class RhythmCoercer implements Serializable {
 
                 normalizeProbabilities(occurrences);
 
-                Random rand = new Random();
-                float prob = rand.nextFloat();
+                float prob = Sampler.forThread().nextFloat();
                 for (int i = 0; i < occurrences.length; i++) {
                     if (prob < occurrences[i]) {
                         toReturn = possibleCoercions.get(i).rhythm;
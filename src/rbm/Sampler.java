@@ -0,0 +1,210 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+/**
+ * class Sampler
+ *
+ * Source of the random numbers used to sample node states.  Implementations
+ * only need to supply uniform doubles and independent child samplers; the
+ * rest is built on those.
+ *
+ * Each thread has its own sampler (see forThread()), split from a root
+ * sampler, so no random generator is allocated or shared in the sampling hot
+ * path.  After setMasterSeed() the sampler of each thread, and of every
+ * sampler split from it, produces the same sequence on every run.  A seeded
+ * MusicBrain does not touch the root: it splits samplers for its runs from
+ * one of its own (see setForThread()).
+ */
+public abstract class Sampler {
+
+    private static Sampler root = new SplittableSampler();
+    private static volatile int generation = 0;
+    private static final ThreadLocal<Sampler> local = new ThreadLocal<Sampler>();
+
+    // the root generation this sampler was split from
+    private int rootGeneration = -1;
+    // reusable buffer for uniforms()
+    private float[] buffer = new float[0];
+    // second value of the last pair of gaussians drawn
+    private double nextGaussian;
+    private boolean haveNextGaussian = false;
+
+    /**
+     *
+     * @return - a uniform double in [0, 1)
+     */
+    public abstract double nextDouble();
+
+    /**
+     *
+     * @return - a new sampler whose sequence is independent of this one's.
+     * The child is a function of this sampler's state, so splitting a seeded
+     * sampler gives seeded children.
+     */
+    public abstract Sampler split();
+
+    /**
+     *
+     * @return - a uniform float in [0, 1)
+     */
+    public float nextFloat() {
+        // 24 random bits, the precision of a float (a plain cast could round up to 1)
+        return (int) (nextDouble() * (1 << 24)) * 0x1.0p-24f;
+    }
+
+    /**
+     *
+     * @return - true or false with equal probability
+     */
+    public boolean nextBoolean() {
+        return nextDouble() < 0.5;
+    }
+
+    /**
+     *
+     * @param bound - the upper bound (exclusive), must be positive
+     * @return - a uniform int in [0, bound)
+     */
+    public int nextInt(int bound) {
+        return (int) (nextDouble() * bound);
+    }
+
+    /**
+     *
+     * @return - a normally distributed double with mean 0 and deviation 1
+     * (Marsaglia's polar method, as in java.util.Random)
+     */
+    public double nextGaussian() {
+        if (haveNextGaussian) {
+            haveNextGaussian = false;
+            return nextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        haveNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    /**
+     *
+     * @param buffer - the array to fill
+     * @param length - the number of uniforms to write, from index 0
+     *
+     * Fills buffer[0, length) with uniform floats in [0, 1)
+     */
+    public void fill(float[] buffer, int length) {
+        for (int i = 0; i < length; ++i) {
+            buffer[i] = nextFloat();
+        }
+    }
+
+    /**
+     *
+     * @param length - the number of uniforms wanted
+     * @return - a buffer owned by this sampler whose first length entries are
+     * fresh uniform floats in [0, 1).  The buffer is reused by the next call,
+     * so it must not be kept.
+     */
+    public float[] uniforms(int length) {
+        if (buffer.length < length) {
+            buffer = new float[length];
+        }
+        fill(buffer, length);
+        return buffer;
+    }
+
+    /**
+     *
+     * @param seed - the seed of the new sampler
+     * @return - a sampler of the default kind with the given seed
+     */
+    public static Sampler create(long seed) {
+        return new SplittableSampler(seed);
+    }
+
+    /**
+     *
+     * @return - the sampler of the calling thread
+     */
+    public static Sampler forThread() {
+        Sampler sampler = local.get();
+        if (sampler == null || sampler.rootGeneration != generation) {
+            sampler = splitRoot();
+            local.set(sampler);
+        }
+        return sampler;
+    }
+
+    /**
+     *
+     * @param sampler - the sampler the calling thread is to use from now on,
+     * or null to split it a new one from the root on its next draw
+     * @return - the sampler the thread used before, to be restored
+     *
+     * Lets code that draws from forThread() (the training of a LayeredRBM,
+     * say) run on a sampler of the caller's without reseeding any other
+     * thread.  setMasterSeed() still replaces it.
+     */
+    public static Sampler setForThread(Sampler sampler) {
+        Sampler previous = local.get();
+        if (sampler != null) {
+            sampler.rootGeneration = generation;
+        }
+        local.set(sampler);
+        return previous;
+    }
+
+    /**
+     *
+     * @param seed - the master seed
+     *
+     * Replaces the root sampler by one seeded with seed.  Every thread gets a
+     * new sampler split from it the next time it calls forThread(), so a
+     * single thread that seeds and then samples always sees the same numbers.
+     */
+    public static synchronized void setMasterSeed(long seed) {
+        root = create(seed);
+        generation++;
+    }
+
+    /**
+     * Replaces the root sampler by an unseeded one
+     */
+    public static synchronized void clearMasterSeed() {
+        root = new SplittableSampler();
+        generation++;
+    }
+
+    private static synchronized Sampler splitRoot() {
+        Sampler sampler = root.split();
+        sampler.rootGeneration = generation;
+        return sampler;
+    }
+} // end of class Sampler
@@ -33,10 +33,11 @@ public class SimpleRBM {
 
     int[] visibleNodes;
     int[] hiddenNodes;
-    float[][] weights;
-    float[][] dPos;    // accumulates positive weight changes
-    float[][] dNeg;    // accumulates negative weight changes
+    WeightMatrix weights;
+    WeightMatrix dPos;    // accumulates positive weight changes
+    WeightMatrix dNeg;    // accumulates negative weight changes
     float annealingRate; // multiplier in sigmoid function
+    boolean fastSigmoid = Params.DEFAULT_FAST_SIGMOID; // logistic function from the table
 
     /*
      *  Method: constructor
@@ -50,18 +51,7 @@ public class SimpleRBM {
         visibleNodes[visibleNodes.length - 1] = 1; //bias is always on
         hiddenNodes[hiddenNodes.length - 1] = 1;
 
-        //initialize weights and weight change matrices
-        this.weights = new float[numVisibleNodes + 1][numHiddenNodes + 1];
-        this.dPos = new float[numVisibleNodes + 1][numHiddenNodes + 1];
-        this.dNeg = new float[numVisibleNodes + 1][numHiddenNodes + 1];
-        Random rand = new Random(); //randomly initialize weights
-        for (int i = 0; i < numVisibleNodes + 1; ++i) {
-            for (int j = 0; j < numHiddenNodes + 1; ++j) {
-                weights[i][j] = new Float(0.1 * rand.nextGaussian());
-                dPos[i][j] = 0;
-                dNeg[i][j] = 0;
-            }
-        }
+        initializeWeights(numVisibleNodes + 1, numHiddenNodes + 1);
     }
 
     /*
@@ -76,17 +66,23 @@ public class SimpleRBM {
         this.hiddenNodes = new int[numHiddenNodes + 1];
         this.hiddenNodes[hiddenNodes.length - 1] = 1;
 
-        //initialize weights and weight change matrices
-        this.weights = new float[visibleNodes.length][numHiddenNodes + 1];
-        this.dPos = new float[visibleNodes.length][numHiddenNodes + 1];
-        this.dNeg = new float[visibleNodes.length][numHiddenNodes + 1];
-        Random rand = new Random(); //randomly initialize weights
-        for (int i = 0; i < visibleNodes.length; ++i) {
-            for (int j = 0; j < numHiddenNodes + 1; ++j) {
-                weights[i][j] = new Float(0.1 * rand.nextGaussian());
-                dPos[i][j] = 0;
-                dNeg[i][j] = 0;
-            }
+        initializeWeights(visibleNodes.length, numHiddenNodes + 1);
+    }
+
+    /*
+     * Method: initializeWeights
+     *
+     * randomly initializes the weights and creates empty weight change
+     * matrices of the given size
+     */
+    private void initializeWeights(int numRows, int numCols) {
+        this.weights = new WeightMatrix(numRows, numCols);
+        this.dPos = new WeightMatrix(numRows, numCols);
+        this.dNeg = new WeightMatrix(numRows, numCols);
+        Sampler rand = Sampler.forThread(); //randomly initialize weights
+        float[] data = weights.getData();
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (float) (0.1 * rand.nextGaussian());
         }
     }
 
@@ -109,11 +105,11 @@ public class SimpleRBM {
         return hiddenNodes;
     }
 
-    public float[][] getWeights() {
+    public WeightMatrix getWeights() {
         return weights;
     }
 
-    public void setWeights(float[][] weights) {
+    public void setWeights(WeightMatrix weights) {
         this.weights = weights;
     }
 
@@ -121,6 +117,15 @@ public class SimpleRBM {
         annealingRate = newRate;
     }
 
+    /**
+     *
+     * @param fastSigmoid - whether to read the logistic function from the
+     * table in class Sigmoid rather than compute it with Math.exp
+     */
+    public void setFastSigmoid(boolean fastSigmoid) {
+        this.fastSigmoid = fastSigmoid;
+    }
+
     /*
      *  Method: train
      *
@@ -146,14 +151,13 @@ public class SimpleRBM {
      */
     public void activateVisible() {
 
-        //initialize random number generator
-        Random rand = new Random();
+        float[] uniforms = Sampler.forThread().uniforms(visibleNodes.length - 1);
 
         for (int i = 0; i < visibleNodes.length - 1; ++i) {
             //compute weighted sum
             float sum = computeVisibleWeightedSum(i);
             //probabalistically activate node based on sigmoid computation
-            if (rand.nextDouble() < logsig(sum, 1)) {
+            if (uniforms[i] < logsig(sum, 1)) {
                 visibleNodes[i] = 1;
             } else {
                 visibleNodes[i] = 0;
@@ -162,18 +166,19 @@ public class SimpleRBM {
     }
 
     public void activateHidden() {
-        Random rand = new Random();
-        for (int i = 0; i < hiddenNodes.length - 1; ++i) {
-            //compute weighted sum
-            float sum = 0;
-            for (int j = 0; j < visibleNodes.length; ++j) {
-                if (visibleNodes[j] == 1) {
-                    sum += weights[j][i];
-                }
+        float[] uniforms = Sampler.forThread().uniforms(hiddenNodes.length - 1);
+
+        //compute weighted sums by adding up the rows of active visible nodes
+        float[] sums = new float[weights.getNumCols()];
+        for (int j = 0; j < visibleNodes.length; ++j) {
+            if (visibleNodes[j] == 1) {
+                weights.addRowTo(j, sums);
             }
+        }
 
+        for (int i = 0; i < hiddenNodes.length - 1; ++i) {
             //probabalistically activate node based on sigmoid computation
-            if (rand.nextDouble() < logsig(sum, annealingRate)) {
+            if (uniforms[i] < logsig(sums[i], annealingRate)) {
                 hiddenNodes[i] = 1;
             } else {
                 hiddenNodes[i] = 0;
@@ -183,13 +188,7 @@ public class SimpleRBM {
 
     //Computes the weighted sum for a visible node
     public float computeVisibleWeightedSum(int index) {
-        float sum = 0;
-        for (int j = 0; j < hiddenNodes.length; j++) {
-            if (hiddenNodes[j] == 1) {
-                sum += weights[index][j];
-            }
-        }
-        return sum;
+        return weights.sumRow(index, hiddenNodes);
     }
 
     /*
@@ -202,9 +201,7 @@ public class SimpleRBM {
     protected void accumulatePos() {
         for (int i = 0; i < visibleNodes.length; ++i) {
             if (visibleNodes[i] == 1) {
-                for (int j = 0; j < hiddenNodes.length; ++j) {
-                    dPos[i][j] += hiddenNodes[j];
-                }
+                dPos.addStatesToRow(i, hiddenNodes);
             }
         }
     }
@@ -212,9 +209,7 @@ public class SimpleRBM {
     protected void accumulateNeg() {
         for (int i = 0; i < visibleNodes.length; ++i) {
             if (visibleNodes[i] == 1) {
-                for (int j = 0; j < hiddenNodes.length; ++j) {
-                    dNeg[i][j] += hiddenNodes[j];
-                }
+                dNeg.addStatesToRow(i, hiddenNodes);
             }
         }
     }
@@ -229,14 +224,15 @@ public class SimpleRBM {
      *
      */
     public void updateWeights(int numInputs) {
-        for (int i = 0; i < weights.length; ++i) {
-            for (int j = 0; j < weights[0].length; ++j) {
-                weights[i][j] += (Params.ALPHA * dPos[i][j] / numInputs);
-                weights[i][j] -= (Params.ALPHA * dNeg[i][j] / numInputs);
+        float[] data = weights.getData();
+        float[] pos = dPos.getData();
+        float[] neg = dNeg.getData();
+        for (int i = 0; i < data.length; ++i) {
+            data[i] += (Params.DEFAULT_ALPHA * pos[i] / numInputs);
+            data[i] -= (Params.DEFAULT_ALPHA * neg[i] / numInputs);
 
-                dPos[i][j] = 0;
-                dNeg[i][j] = 0;
-            }
+            pos[i] = 0;
+            neg[i] = 0;
         }
     }
 
@@ -250,8 +246,8 @@ public class SimpleRBM {
     public float getEnergy() {
         float energy = 0;
         for (int i = 0; i < visibleNodes.length; ++i) {
-            for (int j = 0; j < hiddenNodes.length; ++j) {
-                energy -= visibleNodes[i] * hiddenNodes[j] * weights[i][j];
+            if (visibleNodes[i] == 1) {
+                energy -= weights.sumRow(i, hiddenNodes);
             }
         }
         return energy;
@@ -266,8 +262,10 @@ public class SimpleRBM {
      *
      * input is adjusted by annealing rate, which should be between 0 and 1
      *
+     * see class Sigmoid for the fast approximation used if fastSigmoid is set
+     *
      */
-    protected static float logsig(float x, float annealingRate) {
-        return 1 / (1 + ((float) Math.exp(-x / annealingRate)));
+    protected float logsig(float x, float annealingRate) {
+        return Sigmoid.logsig(x, annealingRate, fastSigmoid);
     }
 }
@@ -0,0 +1,139 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+import java.util.concurrent.Executor;
+import javax.swing.SwingUtilities;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * class SnapshotPublisher
+ *
+ * Hands snapshots from a generating thread to a GenerationObserver without
+ * ever blocking it.  A snapshot is only due once the minimum interval has
+ * passed since the last one and the observer has picked the last one up, so
+ * the generator can skip building snapshots (a Hinton diagram costs a full
+ * pass over the weights) that would never be shown.  The last snapshot of a
+ * run goes through publishFinal, which waits its turn instead of being
+ * dropped, so the observer always ends on the result.
+ */
+public class SnapshotPublisher {
+
+    /**
+     * Runs deliveries on the Swing event thread, for observers that draw
+     */
+    public static final Executor SWING_EXECUTOR = new Executor() {
+        public void execute(Runnable command) {
+            SwingUtilities.invokeLater(command);
+        }
+    };
+
+    private final GenerationObserver observer;
+    private final Executor executor;
+    private final long intervalNanos;
+    private final AtomicBoolean delivering = new AtomicBoolean(false);
+    private long lastPublished;
+    private Runnable pendingFinal; // guarded by this
+
+    /**
+     *
+     * @param observer - the observer to deliver to
+     * @param intervalMillis - the minimum time between snapshots
+     * @param executor - runs the deliveries (e.g. on the Swing event thread)
+     */
+    public SnapshotPublisher(GenerationObserver observer, long intervalMillis, Executor executor) {
+        this.observer = observer;
+        this.executor = executor;
+        this.intervalNanos = intervalMillis * 1000000L;
+        this.lastPublished = System.nanoTime() - intervalNanos;
+    }
+
+    /**
+     *
+     * @return - whether a snapshot published now would be delivered
+     */
+    public boolean isDue() {
+        return !delivering.get() && System.nanoTime() - lastPublished >= intervalNanos;
+    }
+
+    /**
+     *
+     * @param cycle - the generation cycle the snapshot was taken after
+     * @param values - the snapshot, which must not be modified afterwards
+     * @return - whether the snapshot was handed on (it is dropped if the
+     * observer is still busy with the last one)
+     */
+    public boolean publish(int cycle, float[][] values) {
+        if (!delivering.compareAndSet(false, true)) {
+            return false;
+        }
+        lastPublished = System.nanoTime();
+        executor.execute(delivery(cycle, values));
+        return true;
+    }
+
+    /**
+     *
+     * @param cycle - the generation cycle the snapshot was taken after
+     * @param values - the snapshot, which must not be modified afterwards
+     *
+     * Publishes the last snapshot of a run.  If the observer is still busy,
+     * the snapshot is queued (replacing any snapshot queued before it) and
+     * delivered as soon as the observer is done, rather than dropped.
+     */
+    public void publishFinal(int cycle, float[][] values) {
+        Runnable delivery = delivery(cycle, values);
+        synchronized (this) {
+            if (!delivering.compareAndSet(false, true)) {
+                pendingFinal = delivery;
+                return;
+            }
+        }
+        lastPublished = System.nanoTime();
+        executor.execute(delivery);
+    }
+
+    // hands one snapshot to the observer, then either starts the queued final
+    // snapshot or lets the next one through
+    private Runnable delivery(final int cycle, final float[][] values) {
+        return new Runnable() {
+            public void run() {
+                try {
+                    observer.snapshot(cycle, values);
+                } finally {
+                    Runnable next;
+                    synchronized (SnapshotPublisher.this) {
+                        next = pendingFinal;
+                        pendingFinal = null;
+                        if (next == null) {
+                            delivering.set(false);
+                        }
+                    }
+                    if (next != null) {
+                        executor.execute(next);
+                    }
+                }
+            }
+        };
+    }
+} // end of class SnapshotPublisher
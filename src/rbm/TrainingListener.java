@@ -0,0 +1,76 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+/**
+ * interface TrainingListener
+ *
+ * Receives progress events from LayeredRBM.layeredLearn.  All methods are
+ * called on the training thread, so listeners that update a GUI must hand
+ * the work to the event dispatch thread themselves.
+ */
+public interface TrainingListener {
+
+    /**
+     * @param numLayers - the total number of layers in the network
+     * @param numEpochs - the number of epochs each layer is trained for
+     * @param numInputs - the number of inputs in each epoch
+     *
+     * Called once before any layer is trained.
+     */
+    public void trainingStarted(int numLayers, int numEpochs, int numInputs);
+
+    /**
+     * @param layer - the layer about to be trained
+     */
+    public void layerStarted(int layer);
+
+    /**
+     * @param layer - the layer being trained
+     * @param epoch - the epoch about to start
+     * @param energy - the energy of the layer before the epoch
+     */
+    public void epochStarted(int layer, int epoch, float energy);
+
+    /**
+     * @param layer - the layer being trained
+     * @param epoch - the current epoch
+     * @param input - the index of the next input to be trained on
+     *
+     * Called at most Params.MAX_PROGRESS_EVENTS_PER_SECOND times a second.
+     */
+    public void progress(int layer, int epoch, int input);
+
+    /**
+     * Called when the training thread is interrupted, before layeredLearn
+     * throws InterruptedException.
+     */
+    public void trainingStopped();
+
+    /**
+     * @param elapsedMillis - the time spent training, in milliseconds
+     *
+     * Called once after the last layer has been trained.
+     */
+    public void trainingFinished(long elapsedMillis);
+}
@@ -0,0 +1,83 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+/**
+ * class TrainingListeners
+ *
+ * A TrainingListener that forwards every event to each of a list of
+ * listeners in turn.
+ */
+public class TrainingListeners implements TrainingListener {
+
+    private final TrainingListener[] listeners;
+
+    /**
+     * @param listeners - the listeners to forward events to (null entries
+     * are skipped)
+     */
+    public TrainingListeners(TrainingListener... listeners) {
+        java.util.ArrayList<TrainingListener> nonNull = new java.util.ArrayList<TrainingListener>();
+        for (TrainingListener l : listeners)
+            if (l != null)
+                nonNull.add(l);
+        this.listeners = nonNull.toArray(new TrainingListener[nonNull.size()]);
+    }
+
+    /**
+     * @return true if there are no listeners to forward events to
+     */
+    public boolean isEmpty() {
+        return listeners.length == 0;
+    }
+
+    public void trainingStarted(int numLayers, int numEpochs, int numInputs) {
+        for (TrainingListener l : listeners)
+            l.trainingStarted(numLayers, numEpochs, numInputs);
+    }
+
+    public void layerStarted(int layer) {
+        for (TrainingListener l : listeners)
+            l.layerStarted(layer);
+    }
+
+    public void epochStarted(int layer, int epoch, float energy) {
+        for (TrainingListener l : listeners)
+            l.epochStarted(layer, epoch, energy);
+    }
+
+    public void progress(int layer, int epoch, int input) {
+        for (TrainingListener l : listeners)
+            l.progress(layer, epoch, input);
+    }
+
+    public void trainingStopped() {
+        for (TrainingListener l : listeners)
+            l.trainingStopped();
+    }
+
+    public void trainingFinished(long elapsedMillis) {
+        for (TrainingListener l : listeners)
+            l.trainingFinished(elapsedMillis);
+    }
+}
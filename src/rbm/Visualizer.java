@@ -31,20 +31,20 @@ import javax.swing.*;
  * class Visualizer
  * Prints out the current state of an RBM as rectangles
  */
-public class Visualizer extends JPanel {
+public class Visualizer extends JPanel implements GenerationObserver {
 
     // member variable: the state of the rbm 
     private float[][] state;
 
     /**
-     * @param state - an array of binary integers to be visualized
+     * @param state - the binary layer state to be visualized
      * @param numRows - the number of rows to break the state array into
      * @param numCols - the number of columns to break the state array into
      *
      * Constructs a new Visualizer sized according to numRows and numCols,
      * visualizing the given state array
      */
-    public Visualizer(int[] state, int numRows, int numCols){
+    public Visualizer(LayerState state, int numRows, int numCols){
         this(convertArray(state, numRows, numCols));
     }
 
@@ -73,14 +73,14 @@ public class Visualizer extends JPanel {
     
     /**
      *
-     * @param state - an array of binary integers to be visualized
+     * @param state - the binary layer state to be visualized
      * @param numRows - the number of rows to break the state array into
      * @param numCols - the number of columns to break the state array into
      *
      * Repaints the Visualizer with the given state array, broken up into the
      * given number of rows and columns
      */
-    public void visualize(int[] state, int numRows, int numCols){
+    public void visualize(LayerState state, int numRows, int numCols){
         float[][] newState = convertArray(state, numRows, numCols);
         this.state = newState;
         visualize();
@@ -97,6 +97,17 @@ public class Visualizer extends JPanel {
         visualize();
     }
 
+    /**
+     *
+     * @param cycle - the generation cycle of the snapshot
+     * @param values - the snapshot to show
+     *
+     * Shows a snapshot published during generation (on the Swing thread)
+     */
+    public void snapshot(int cycle, float[][] values){
+        visualize(values);
+    }
+
    /**
      *
      * This method should never be called.  It overwrites a JPanel method
@@ -128,15 +139,15 @@ public class Visualizer extends JPanel {
         } // end of method paint
 
     /*
-     * Converts an integer array into a 2D float array for visualizing given.
+     * Converts a layer state into a 2D float array for visualizing given.
      * numRows and numCols are used to correctly break up the array.
      */
-    private static float[][] convertArray(int[] array, int numRows, int numCols)
+    static float[][] convertArray(LayerState array, int numRows, int numCols)
     {
         float[][] newArray = new float[numRows][numCols];
         for (int i = 0; i < newArray.length; ++i) {
             for (int j = 0; j < newArray[0].length; ++j) {
-                newArray[i][j] = (float) array[(i * numCols) + j];
+                newArray[i][j] = (float) array.get((i * numCols) + j);
             }
         }
         return newArray;
@@ -0,0 +1,460 @@
+/**
+ * This Java Class is part of the RBM-provisor Application
+ * which, in turn, is part of the Intelligent Music Software
+ * project at Harvey Mudd College, under the directorship of Robert Keller.
+ *
+ * Copyright (C) 2009 Robert Keller and Harvey Mudd College
+ *
+ * RBM-provisor is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * RBM-provisor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * merchantability or fitness for a particular purpose.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RBM-provisor; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package rbm;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.FloatBuffer;
+
+/**
+ * class WeightMatrix
+ *
+ * A visible x hidden matrix of floats stored in a single row-major array.
+ * Row i holds the weights from visible node i to every hidden node, so all
+ * of the kernels below walk memory sequentially.
+ *
+ * A matrix read from a model file may instead be mapped from the file (see
+ * ModelFile.read), off the heap and shared through the page cache by every
+ * process that maps the same file.  A mapped matrix is read-only: getData
+ * and the methods that change entries throw, and onHeap gives a copy that
+ * can be trained.
+ */
+public class WeightMatrix implements Serializable {
+
+    static final long serialVersionUID = -2316846520387160574L;
+
+    private final int numRows;
+    private final int numCols;
+    private final float[] data;      // null when mapped
+    private final transient FloatBuffer mapped;
+
+    /**
+     *
+     * @param numRows - the number of rows (visible nodes, bias included)
+     * @param numCols - the number of columns (hidden nodes, bias included)
+     *
+     * Constructs a new matrix filled with zeros
+     */
+    public WeightMatrix(int numRows, int numCols) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.data = new float[numRows * numCols];
+        this.mapped = null;
+    }
+
+    /**
+     *
+     * @param numRows - the number of rows
+     * @param numCols - the number of columns
+     * @param mapped - the numRows * numCols entries, row by row, read-only
+     */
+    private WeightMatrix(int numRows, int numCols, FloatBuffer mapped) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.data = null;
+        this.mapped = mapped;
+    }
+
+    /**
+     *
+     * @param values - a rectangular 2D array to copy into the new matrix
+     */
+    public WeightMatrix(float[][] values) {
+        this(values.length, values[0].length);
+        for (int i = 0; i < numRows; i++) {
+            System.arraycopy(values[i], 0, data, i * numCols, numCols);
+        }
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     *
+     * @return - the backing row-major array (note - not a copy)
+     */
+    public float[] getData() {
+        checkWritable();
+        return data;
+    }
+
+    /**
+     *
+     * @return - whether the entries are mapped read-only from a model file
+     */
+    public boolean isMapped() {
+        return mapped != null;
+    }
+
+    /**
+     *
+     * @return - this matrix if its entries are on the heap, otherwise a heap
+     * copy of it
+     */
+    public WeightMatrix onHeap() {
+        if (mapped == null) {
+            return this;
+        }
+        WeightMatrix copy = new WeightMatrix(numRows, numCols);
+        mapped.duplicate().get(copy.data);
+        return copy;
+    }
+
+    private void checkWritable() {
+        if (mapped != null) {
+            throw new UnsupportedOperationException("The weights are mapped read-only from a model file");
+        }
+    }
+
+    // mapped matrices are serialized as heap copies
+    private Object writeReplace() {
+        return onHeap();
+    }
+
+    public float get(int row, int col) {
+        if (mapped != null) {
+            return mapped.get(row * numCols + col);
+        }
+        return data[row * numCols + col];
+    }
+
+    public void set(int row, int col, float value) {
+        checkWritable();
+        data[row * numCols + col] = value;
+    }
+
+    /**
+     *
+     * @param col - the column to read
+     * @return - a copy of one column, i.e. the weights feeding a single hidden
+     * node
+     */
+    public float[] getColumn(int col) {
+        float[] column = new float[numRows];
+        for (int i = 0, index = col; i < numRows; i++, index += numCols) {
+            column[i] = (mapped != null) ? mapped.get(index) : data[index];
+        }
+        return column;
+    }
+
+    /**
+     *
+     * @return - a copy of the matrix as a 2D array
+     */
+    public float[][] toArray() {
+        float[][] values = new float[numRows][numCols];
+        FloatBuffer source = (mapped == null) ? null : mapped.duplicate();
+        for (int i = 0; i < numRows; i++) {
+            if (source != null) {
+                source.get(values[i]);
+            } else {
+                System.arraycopy(data, i * numCols, values[i], 0, numCols);
+            }
+        }
+        return values;
+    }
+
+    /**
+     *
+     * @param row - the row to add
+     * @param sums - the array to add the row into, at least numCols long
+     *
+     * sums[j] += matrix[row][j] for every column j
+     */
+    public void addRowTo(int row, float[] sums) {
+        addRowTo(row, sums, 0, numCols);
+    }
+
+    /**
+     *
+     * @param row - the row to add
+     * @param sums - the array to add the row into
+     * @param start - the first column to add, inclusive
+     * @param end - the last column to add, exclusive
+     *
+     * sums[j] += matrix[row][j] for every column j in [start, end)
+     */
+    public void addRowTo(int row, float[] sums, int start, int end) {
+        if (mapped != null) {
+            FloatBuffer weights = mapped;
+            for (int j = start, index = row * numCols + start; j < end; j++, index++) {
+                sums[j] += weights.get(index);
+            }
+            return;
+        }
+        for (int j = start, index = row * numCols + start; j < end; j++, index++) {
+            sums[j] += data[index];
+        }
+    }
+
+    /**
+     *
+     * @param rows - the rows to add
+     * @param sums - the array to add the rows into
+     * @param start - the first column to add, inclusive
+     * @param end - the last column to add, exclusive
+     *
+     * Adds columns [start, end) of every row whose node is on in rows into sums
+     */
+    public void addRowsTo(LayerState rows, float[] sums, int start, int end) {
+        for (int i = rows.nextSetBit(0); i >= 0; i = rows.nextSetBit(i + 1)) {
+            addRowTo(i, sums, start, end);
+        }
+    }
+
+    /**
+     *
+     * @param rows - the states selecting the rows
+     * @param clamped - whether to add the rows of the clamped nodes that are
+     * on, or those of the unclamped nodes that are on
+     * @param sums - the array to add the rows into
+     * @param start - the first column to add, inclusive
+     * @param end - the last column to add, exclusive
+     *
+     * Same as addRowsTo, for only the clamped or only the unclamped nodes
+     */
+    public void addRowsTo(LayerState rows, boolean clamped, float[] sums, int start, int end) {
+        if (clamped) {
+            for (int i = rows.nextClampedSetBit(0); i >= 0; i = rows.nextClampedSetBit(i + 1)) {
+                addRowTo(i, sums, start, end);
+            }
+        } else {
+            for (int i = rows.nextFreeSetBit(0); i >= 0; i = rows.nextFreeSetBit(i + 1)) {
+                addRowTo(i, sums, start, end);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param row - the row to add
+     * @param scale - factor applied to the row (1 to add it, -1 to take it away)
+     * @param sums - the array to add the row into
+     *
+     * sums[j] += scale * matrix[row][j] for every column j
+     */
+    public void addScaledRowTo(int row, float scale, float[] sums) {
+        if (mapped != null) {
+            FloatBuffer weights = mapped;
+            for (int j = 0, index = row * numCols; j < numCols; j++, index++) {
+                sums[j] += scale * weights.get(index);
+            }
+            return;
+        }
+        for (int j = 0, index = row * numCols; j < numCols; j++, index++) {
+            sums[j] += scale * data[index];
+        }
+    }
+
+    /**
+     *
+     * @param col - the column to add
+     * @param scale - factor applied to the column (1 to add it, -1 to take it away)
+     * @param sums - the array to add the column into
+     *
+     * sums[i] += scale * matrix[i][col] for every row i.  The column is
+     * strided through memory, so this is only worth it for a few columns.
+     */
+    public void addScaledColumnTo(int col, float scale, float[] sums) {
+        for (int i = 0, index = col; i < numRows; i++, index += numCols) {
+            sums[i] += scale * ((mapped != null) ? mapped.get(index) : data[index]);
+        }
+    }
+
+    /**
+     *
+     * @param col - the column to add
+     * @param scale - factor applied to the column (1 to add it, -1 to take it away)
+     * @param sums - the array to add the column into
+     * @param rows - states of the rows, one per row; only the unclamped ones
+     * are added to
+     *
+     * addScaledColumnTo for the unclamped rows only, whose sums are the only
+     * ones read (see InputRBM.computeFreeVisibleWeightedSums)
+     */
+    public void addScaledColumnTo(int col, float scale, float[] sums, LayerState rows) {
+        for (int i = rows.nextUnclamped(0); i >= 0 && i < numRows; i = rows.nextUnclamped(i + 1)) {
+            int index = i * numCols + col;
+            sums[i] += scale * ((mapped != null) ? mapped.get(index) : data[index]);
+        }
+    }
+
+    /**
+     *
+     * @param row - the row to sum
+     * @param states - binary states, one per column
+     * @return - the sum of matrix[row][j] over every j with states[j] == 1
+     */
+    public float sumRow(int row, int[] states) {
+        float sum = 0;
+        for (int j = 0, index = row * numCols; j < numCols; j++, index++) {
+            if (states[j] == 1) {
+                sum += (mapped != null) ? mapped.get(index) : data[index];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     *
+     * @param row - the row to sum
+     * @param states - binary states, one per column
+     * @return - the sum of matrix[row][j] over every j that is on in states
+     */
+    public float sumRow(int row, LayerState states) {
+        float sum = 0;
+        int offset = row * numCols;
+        if (mapped != null) {
+            FloatBuffer weights = mapped;
+            for (int j = states.nextSetBit(0); j >= 0; j = states.nextSetBit(j + 1)) {
+                sum += weights.get(offset + j);
+            }
+            return sum;
+        }
+        for (int j = states.nextSetBit(0); j >= 0; j = states.nextSetBit(j + 1)) {
+            sum += data[offset + j];
+        }
+        return sum;
+    }
+
+    /**
+     *
+     * @param row - the row to add to
+     * @param states - binary states, one per column
+     *
+     * matrix[row][j] += states[j] for every column j
+     */
+    public void addStatesToRow(int row, int[] states) {
+        checkWritable();
+        for (int j = 0, index = row * numCols; j < numCols; j++, index++) {
+            data[index] += states[j];
+        }
+    }
+
+    /**
+     *
+     * @param row - the row to add to
+     * @param states - binary states, one per column
+     *
+     * matrix[row][j] += 1 for every column j that is on in states
+     */
+    public void addStatesToRow(int row, LayerState states) {
+        checkWritable();
+        int offset = row * numCols;
+        for (int j = states.nextSetBit(0); j >= 0; j = states.nextSetBit(j + 1)) {
+            data[offset + j] += 1;
+        }
+    }
+
+    /**
+     *
+     * @param row - the row to add to
+     * @param states - binary states, one per column
+     * @param scale - factor applied to every state
+     *
+     * matrix[row][j] += scale * states[j] for every column j
+     */
+    public void addStatesToRow(int row, int[] states, float scale) {
+        checkWritable();
+        for (int j = 0, index = row * numCols; j < numCols; j++, index++) {
+            data[index] += scale * states[j];
+        }
+    }
+
+    /**
+     *
+     * @param other - a matrix of the same shape
+     * @param row - the row to add
+     *
+     * matrix[row][j] += other[row][j] for every column j
+     */
+    public void addRowFrom(WeightMatrix other, int row) {
+        checkWritable();
+        float[] otherData = other.getData();
+        for (int j = 0, index = row * numCols; j < numCols; j++, index++) {
+            data[index] += otherData[index];
+        }
+    }
+
+    /**
+     *
+     * @param row - the row to set to zero
+     */
+    public void clearRow(int row) {
+        checkWritable();
+        java.util.Arrays.fill(data, row * numCols, (row + 1) * numCols, 0);
+    }
+
+    /**
+     * Sets every entry to zero
+     */
+    public void clear() {
+        checkWritable();
+        java.util.Arrays.fill(data, 0);
+    }
+
+    /**
+     *
+     * @param out - the model file being written
+     *
+     * Writes the dimensions, then the weights as one aligned block of raw
+     * floats (see class ModelFile)
+     */
+    void writeModel(ModelFile.Output out) throws IOException {
+        out.writeInt(numRows);
+        out.writeInt(numCols);
+        out.align(ModelFile.BLOCK_ALIGNMENT);
+        if (mapped != null) {
+            out.writeFloats(mapped.duplicate());
+        } else {
+            out.writeFloats(data);
+        }
+    }
+
+    /**
+     *
+     * @param in - the model file being read
+     * @return - the matrix written by writeModel, mapped from the file if
+     * the file is being read with mapped weights
+     */
+    static WeightMatrix readModel(ModelFile.Input in) throws IOException {
+        int numRows = in.readLength(false, 0);
+        int numCols = in.readLength(false, 0);
+        if ((long) numRows * numCols > Integer.MAX_VALUE) {
+            throw new IOException("Weight matrix of " + numRows + " x " + numCols + " is too large");
+        }
+        in.align(ModelFile.BLOCK_ALIGNMENT);
+        in.checkBlock(4L * numRows * numCols);
+        if (in.mapsFloats()) {
+            return new WeightMatrix(numRows, numCols, in.mapFloats(numRows * numCols));
+        }
+        WeightMatrix matrix = new WeightMatrix(numRows, numCols);
+        in.readFloats(matrix.data);
+        return matrix;
+    }
+} // end of class WeightMatrix